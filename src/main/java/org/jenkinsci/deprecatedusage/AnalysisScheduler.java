@@ -0,0 +1,115 @@
+package org.jenkinsci.deprecatedusage;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Runs the analyses of the cores/plugins waiting for a thread from the largest file to the smallest one, so that the
+ * largest ones do not start last and leave a single thread busy at the end of the run. The analyses running at a
+ * time are also bounded by the total size of their files, so that several huge files are not inflated at once: the
+ * largest waiting file then waits for enough room, while the smaller ones wait for it.
+ */
+final class AnalysisScheduler {
+    private final Executor executor;
+    private final int parallelism;
+    private final long maxInFlightBytes;
+    private final PriorityQueue<Task<?>> waiting = new PriorityQueue<>(
+            Comparator.<Task<?>>comparingLong(task -> task.size).reversed().thenComparingLong(task -> task.order));
+    private long submitted;
+    private int running;
+    private long inFlightBytes;
+
+    /**
+     * @param parallelism      maximum number of analyses running at a time
+     * @param maxInFlightBytes maximum total size of the files analyzed at a time, unless a single file is larger
+     */
+    AnalysisScheduler(Executor executor, int parallelism, long maxInFlightBytes) {
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.maxInFlightBytes = maxInFlightBytes;
+    }
+
+    /**
+     * @param size the size of the file to analyze
+     */
+    <T> CompletableFuture<T> submit(long size, Supplier<T> analysis) {
+        Task<T> task = new Task<>(size, analysis);
+        synchronized (this) {
+            task.order = submitted++;
+            waiting.add(task);
+        }
+        startWaitingTasks();
+        return task.result;
+    }
+
+    /**
+     * Reserves room for a subtask of a running analysis, such as a library jar read in parallel, without waiting: the
+     * bytes are only reserved if they fit in the room left by the running analyses. Released by {@link #release(long)}.
+     *
+     * @return false if there is not enough room, the analysis then does the work itself
+     */
+    synchronized boolean tryReserve(long size) {
+        if (inFlightBytes + size > maxInFlightBytes) {
+            return false;
+        }
+        inFlightBytes += size;
+        return true;
+    }
+
+    void release(long size) {
+        synchronized (this) {
+            inFlightBytes -= size;
+        }
+        startWaitingTasks();
+    }
+
+    private void startWaitingTasks() {
+        while (true) {
+            Task<?> task;
+            synchronized (this) {
+                task = waiting.peek();
+                if (task == null || running >= parallelism || running > 0 && inFlightBytes + task.size > maxInFlightBytes) {
+                    return;
+                }
+                waiting.poll();
+                running++;
+                inFlightBytes += task.size;
+            }
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    synchronized (this) {
+                        running--;
+                        inFlightBytes -= task.size;
+                    }
+                    startWaitingTasks();
+                }
+            });
+        }
+    }
+
+    private static final class Task<T> {
+        private final long size;
+        private final Supplier<T> analysis;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        // first submitted first, for the files of the same size
+        private long order;
+
+        Task(long size, Supplier<T> analysis) {
+            this.size = size;
+            this.analysis = analysis;
+        }
+
+        void run() {
+            try {
+                result.complete(analysis.get());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Facts of single class files, keyed by a digest of their bytes, so that a class copied or shaded unchanged into
+ * many plugins (or into several versions of a plugin) is only visited once. Shared by all the threads.
+ * <p>
+ * The facts collected with a criteria to filter them only hold for that criteria, so an instance must only be used
+ * with one criteria. The facts collected without filtering can be used with any criteria, only them are
+ * {@link #write(DataOutputStream) written}.
+ */
+public final class ClassFactsStore {
+    /**
+     * Bounds the memory used by the store, the classes read once it is full are not stored
+     */
+    static final int DEFAULT_MAX_ENTRIES = 500_000;
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final AtomicInteger hits = new AtomicInteger();
+
+    public ClassFactsStore() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public ClassFactsStore(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param filtered    true if the facts are collected with the criteria to filter them
+     * @param withCallers true if the facts are collected with the callers of each call site
+     */
+    static Key key(byte[] classFile, boolean filtered, boolean withCallers) {
+        ByteBuffer digest = ByteBuffer.wrap(DigestUtils.md5(classFile));
+        return new Key(digest.getLong(), digest.getLong(), filtered, withCallers);
+    }
+
+    /**
+     * Adds the stored facts of the class to the given ones
+     *
+     * @return false if the class is not in the store
+     */
+    boolean addTo(Key key, ScanFacts facts) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return false;
+        }
+        entry.addTo(facts);
+        hits.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @param classFacts the facts collected from the class file only
+     */
+    void put(Key key, ScanFacts classFacts) {
+        if (entries.size() < maxEntries) {
+            entries.putIfAbsent(key, new Entry(classFacts));
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of class files whose facts were reused instead of visiting them
+     */
+    public int getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Writes the facts collected without filtering
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(ScanFacts.FORMAT_VERSION);
+        for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+            Key key = entry.getKey();
+            if (key.filtered) {
+                continue;
+            }
+            out.writeBoolean(true);
+            out.writeLong(key.high);
+            out.writeLong(key.low);
+            out.writeBoolean(key.withCallers);
+            ScanFacts facts = new ScanFacts();
+            entry.getValue().addTo(facts);
+            facts.write(out);
+        }
+        out.writeBoolean(false);
+    }
+
+    /**
+     * @return the store, empty if it was written by another version of the scanner
+     */
+    public static ClassFactsStore read(DataInputStream in) throws IOException {
+        ClassFactsStore store = new ClassFactsStore();
+        if (in.readInt() != ScanFacts.FORMAT_VERSION) {
+            return store;
+        }
+        while (in.readBoolean()) {
+            Key key = new Key(in.readLong(), in.readLong(), false, in.readBoolean());
+            ScanFacts facts = ScanFacts.read(in);
+            if (facts == null) {
+                return new ClassFactsStore();
+            }
+            store.put(key, facts);
+        }
+        return store;
+    }
+
+    static final class Key {
+        private final long high;
+        private final long low;
+        private final boolean filtered;
+        private final boolean withCallers;
+
+        Key(long high, long low, boolean filtered, boolean withCallers) {
+            this.high = high;
+            this.low = low;
+            this.filtered = filtered;
+            this.withCallers = withCallers;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return high == that.high && low == that.low && filtered == that.filtered && withCallers == that.withCallers;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high ^ low) * 4 + (filtered ? 2 : 0) + (withCallers ? 1 : 0);
+        }
+    }
+
+    /**
+     * Facts of a class, in flat arrays rather than collections: most of them are kept for the whole run
+     */
+    private static final class Entry {
+        private static final String[] NO_STRINGS = new String[0];
+        private static final int[] NO_INTS = new int[0];
+
+        private final String[] referencedClasses;
+        // class name, count of super class and interfaces, then their names, for each class
+        private final int[] hierarchy;
+        // field (1 or 0), class name, name, desc and caller, for each call site
+        private final int[] callSites;
+
+        Entry(ScanFacts facts) {
+            this.referencedClasses = facts.getReferencedClasses().isEmpty() ? NO_STRINGS
+                    : facts.getReferencedClasses().toArray(new String[0]);
+            int hierarchyLength = 0;
+            for (int[] supers : facts.getSuperClassAndInterfacesByClass().values()) {
+                hierarchyLength += 2 + supers.length;
+            }
+            this.hierarchy = new int[hierarchyLength];
+            int i = 0;
+            for (Map.Entry<Integer, int[]> entry : facts.getSuperClassAndInterfacesByClass().entrySet()) {
+                hierarchy[i++] = entry.getKey();
+                hierarchy[i++] = entry.getValue().length;
+                for (int s : entry.getValue()) {
+                    hierarchy[i++] = s;
+                }
+            }
+            this.callSites = facts.getCallSites().isEmpty() ? NO_INTS : new int[5 * facts.getCallSites().size()];
+            i = 0;
+            for (ScanFacts.CallSite callSite : facts.getCallSites()) {
+                callSites[i++] = callSite.field ? 1 : 0;
+                callSites[i++] = callSite.className;
+                callSites[i++] = callSite.name;
+                callSites[i++] = callSite.desc;
+                callSites[i++] = callSite.caller;
+            }
+        }
+
+        void addTo(ScanFacts facts) {
+            for (String className : referencedClasses) {
+                facts.addReferencedClass(className);
+            }
+            for (int i = 0; i < hierarchy.length; ) {
+                int className = hierarchy[i++];
+                int[] supers = new int[hierarchy[i++]];
+                System.arraycopy(hierarchy, i, supers, 0, supers.length);
+                i += supers.length;
+                facts.addSuperClassAndInterfaces(className, supers);
+            }
+            for (int i = 0; i < callSites.length; i += 5) {
+                facts.addCallSite(new ScanFacts.CallSite(callSites[i] == 1, callSites[i + 1], callSites[i + 2],
+                        callSites[i + 3], callSites[i + 4]));
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package org.jenkinsci.deprecatedusage;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Super class and interfaces of the known classes, with the ids of {@link Symbols}.
+ * Java classes are not recorded as super classes or interfaces, since they are not analyzed.
+ * <p>
+ * The hierarchy of the cores is built while looking for their deprecated APIs and shared by the analyses of all the
+ * plugins. Each plugin is analyzed with a view adding its own classes to it, and the calls through classes defined in
+ * other plugins are resolved once the classes of all plugins are known, with a view where the classes of the plugin
+ * override the ones of the same name in other plugins.
+ * <p>
+ * A hierarchy is not modified once built. The ancestors of each class are memoized on first lookup, so that it can be
+ * read concurrently.
+ */
+public final class ClassHierarchy {
+    private final Map<Integer, int[]> superClassAndInterfacesByClass;
+    private final ClassHierarchy parent;
+    /**
+     * When true, the classes of this hierarchy take precedence over the ones of the parent, also in the ancestors of
+     * the classes of the parent
+     */
+    private final boolean overriding;
+    private final Map<Integer, Ancestry> ancestryByClass = new ConcurrentHashMap<>();
+    private final Map<ClassNameTable, ClassNameTable> tablesWithSubclasses = new WeakHashMap<>();
+
+    public ClassHierarchy(Map<Integer, int[]> superClassAndInterfacesByClass) {
+        this(superClassAndInterfacesByClass, null);
+    }
+
+    /**
+     * @param parent hierarchy used for the classes which are not in the given map, may be null
+     */
+    public ClassHierarchy(Map<Integer, int[]> superClassAndInterfacesByClass, ClassHierarchy parent) {
+        this(superClassAndInterfacesByClass, parent, false);
+    }
+
+    private ClassHierarchy(Map<Integer, int[]> superClassAndInterfacesByClass, ClassHierarchy parent, boolean overriding) {
+        this.superClassAndInterfacesByClass = superClassAndInterfacesByClass;
+        this.parent = parent;
+        this.overriding = overriding;
+    }
+
+    /**
+     * Returns a new hierarchy with the classes of this one and the given ones. When a class is defined several times,
+     * the first definition is kept.
+     */
+    public ClassHierarchy with(Collection<Map<Integer, int[]>> classes) {
+        Map<Integer, int[]> all = new HashMap<>(superClassAndInterfacesByClass);
+        for (Map<Integer, int[]> map : classes) {
+            map.forEach(all::putIfAbsent);
+        }
+        return new ClassHierarchy(all, parent);
+    }
+
+    /**
+     * Returns a view of this hierarchy where the given classes replace the ones of the same name, including in the
+     * ancestors of the other classes
+     */
+    public ClassHierarchy overriddenBy(Map<Integer, int[]> classes) {
+        return new ClassHierarchy(classes, this, true);
+    }
+
+    /**
+     * @return the super class and the interfaces, or null if the class is unknown
+     */
+    public int[] getSuperClassAndInterfaces(int className) {
+        int[] superClassAndInterfaces = superClassAndInterfacesByClass.get(className);
+        if (superClassAndInterfaces == null && parent != null) {
+            return parent.getSuperClassAndInterfaces(className);
+        }
+        return superClassAndInterfaces;
+    }
+
+    /**
+     * Returns the class followed by all its known ancestors, each of them once
+     */
+    public int[] getClassAndAncestors(int className) {
+        return ancestry(className).classAndAncestors;
+    }
+
+    /**
+     * Returns true if the class and all its ancestors are known, or are java classes
+     */
+    public boolean isComplete(int className) {
+        return ancestry(className).complete;
+    }
+
+    /**
+     * Returns the classes of this hierarchy (without the parent ones) extending or implementing a class of the table
+     */
+    public Set<String> findSubclassesOf(ClassNameTable targets) {
+        Symbols symbols = Symbols.get();
+        Set<String> subclasses = new HashSet<>();
+        for (int className : superClassAndInterfacesByClass.keySet()) {
+            int[] classAndAncestors = getClassAndAncestors(className);
+            for (int i = 1; i < classAndAncestors.length; i++) {
+                if (targets.contains(symbols.symbol(classAndAncestors[i]))) {
+                    subclasses.add(symbols.symbol(className));
+                    break;
+                }
+            }
+        }
+        return subclasses;
+    }
+
+    /**
+     * Same as {@link ClassNameTable#with(Collection)} with the {@link #findSubclassesOf(ClassNameTable) subclasses}
+     * of the table in this hierarchy, computed once per table
+     */
+    public ClassNameTable withSubclassesOf(ClassNameTable targets) {
+        synchronized (tablesWithSubclasses) {
+            return tablesWithSubclasses.computeIfAbsent(targets, t -> t.with(findSubclassesOf(t)));
+        }
+    }
+
+    private Ancestry ancestry(int className) {
+        Ancestry ancestry = ancestryByClass.get(className);
+        if (ancestry != null) {
+            return ancestry;
+        }
+        return ancestry(className, new HashSet<>());
+    }
+
+    /**
+     * @param inProgress the classes whose ancestry is being computed, against cycles
+     */
+    private Ancestry ancestry(int className, Set<Integer> inProgress) {
+        Ancestry ancestry = ancestryByClass.get(className);
+        if (ancestry != null) {
+            return ancestry;
+        }
+        if (parent != null && !superClassAndInterfacesByClass.containsKey(className)
+                && !(overriding && extendsAnyOf(parent.ancestry(className, inProgress)))) {
+            // a class of the parent can only extend classes of the parent, unless overridden here
+            ancestry = parent.ancestry(className, inProgress);
+        } else {
+            inProgress.add(className);
+            ancestry = computeAncestry(className, inProgress);
+            inProgress.remove(className);
+        }
+        Ancestry previous = ancestryByClass.putIfAbsent(className, ancestry);
+        return previous != null ? previous : ancestry;
+    }
+
+    private boolean extendsAnyOf(Ancestry ancestry) {
+        for (int i = 1; i < ancestry.classAndAncestors.length; i++) {
+            if (superClassAndInterfacesByClass.containsKey(ancestry.classAndAncestors[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Ancestry computeAncestry(int className, Set<Integer> inProgress) {
+        int[] superClassAndInterfaces = getSuperClassAndInterfaces(className);
+        if (superClassAndInterfaces == null) {
+            return new Ancestry(new int[] { className }, DeprecatedUsage.isJavaClass(Symbols.get().symbol(className)));
+        }
+        if (superClassAndInterfaces.length == 0) {
+            return new Ancestry(new int[] { className }, true);
+        }
+        boolean complete = true;
+        IntSet seen = new IntSet();
+        seen.add(className);
+        int[] classAndAncestors = new int[8];
+        int count = 0;
+        classAndAncestors[count++] = className;
+        for (int superClassOrInterface : superClassAndInterfaces) {
+            if (inProgress.contains(superClassOrInterface)) {
+                continue;
+            }
+            Ancestry superAncestry = ancestry(superClassOrInterface, inProgress);
+            complete &= superAncestry.complete;
+            for (int ancestor : superAncestry.classAndAncestors) {
+                if (seen.add(ancestor)) {
+                    if (count == classAndAncestors.length) {
+                        classAndAncestors = Arrays.copyOf(classAndAncestors, count * 2);
+                    }
+                    classAndAncestors[count++] = ancestor;
+                }
+            }
+        }
+        return new Ancestry(Arrays.copyOf(classAndAncestors, count), complete);
+    }
+
+    private static final class Ancestry {
+        private final int[] classAndAncestors;
+        private final boolean complete;
+
+        Ancestry(int[] classAndAncestors, boolean complete) {
+            this.classAndAncestors = classAndAncestors;
+            this.complete = complete;
+        }
+    }
+}
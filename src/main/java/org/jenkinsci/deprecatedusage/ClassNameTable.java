@@ -0,0 +1,125 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.jenkinsci.deprecatedusage.search.SearchCriteria;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Hash table of class names, looked up directly with the modified UTF-8 bytes of a class file constant pool,
+ * without decoding them into strings.
+ */
+public final class ClassNameTable {
+    private static final Map<SearchCriteria, Optional<ClassNameTable>> TABLES_BY_CRITERIA = new WeakHashMap<>();
+
+    private final Set<String> names;
+    private final byte[][] keys;
+    private final String[] values;
+    private final int mask;
+
+    public ClassNameTable(Collection<String> classNames) {
+        this.names = new HashSet<>(classNames);
+        int capacity = Integer.highestOneBit(Math.max(names.size(), 1) * 2) * 2;
+        this.keys = new byte[capacity][];
+        this.values = new String[capacity];
+        this.mask = capacity - 1;
+        for (String name : names) {
+            byte[] key = toModifiedUtf8(name);
+            int index = hash(key, 0, key.length) & mask;
+            while (keys[index] != null) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = key;
+            values[index] = name;
+        }
+    }
+
+    /**
+     * Returns the table of the class names the criteria can match (as a class, or as the owner of a method or field),
+     * or null if the criteria cannot enumerate them. The table is built once per criteria.
+     */
+    public static ClassNameTable of(SearchCriteria searchCriteria) {
+        synchronized (TABLES_BY_CRITERIA) {
+            return TABLES_BY_CRITERIA.computeIfAbsent(searchCriteria, sc -> {
+                Set<String> targetClassNames = sc.getTargetClassNames();
+                return Optional.ofNullable(targetClassNames == null ? null : new ClassNameTable(targetClassNames));
+            }).orElse(null);
+        }
+    }
+
+    /**
+     * Returns a new table with the names of this table and the given ones
+     */
+    public ClassNameTable with(Collection<String> classNames) {
+        Set<String> all = new HashSet<>(names);
+        all.addAll(classNames);
+        return new ClassNameTable(all);
+    }
+
+    public boolean contains(String className) {
+        return names.contains(className);
+    }
+
+    /**
+     * @return the class name encoded in the given bytes, if in the table, otherwise null
+     */
+    public String find(byte[] data, int offset, int length) {
+        int index = hash(data, offset, length) & mask;
+        byte[] key;
+        while ((key = keys[index]) != null) {
+            if (equals(key, data, offset, length)) {
+                return values[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    private static boolean equals(byte[] key, byte[] data, int offset, int length) {
+        if (key.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key[i] != data[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] data, int offset, int length) {
+        int hash = length;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + data[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static byte[] toModifiedUtf8(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            length += c >= 0x01 && c <= 0x7F ? 1 : c <= 0x7FF ? 2 : 3;
+        }
+        byte[] bytes = new byte[length];
+        int position = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x01 && c <= 0x7F) {
+                bytes[position++] = (byte) c;
+            } else if (c <= 0x7FF) {
+                bytes[position++] = (byte) (0xC0 | ((c >> 6) & 0x1F));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                bytes[position++] = (byte) (0xE0 | ((c >> 12) & 0x0F));
+                bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return bytes;
+    }
+}
@@ -8,12 +8,22 @@ import org.objectweb.asm.Opcodes;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
 
 public class DeprecatedApi {
     // some plugins such as job-dsl has following code without using deprecated :
@@ -32,7 +42,13 @@ public class DeprecatedApi {
     private final Set<String> classes = new ConcurrentSkipListSet<>();
     private final Set<String> methods = new ConcurrentSkipListSet<>();
     private final Set<String> fields = new ConcurrentSkipListSet<>();
-    private final ClassVisitor classVisitor = new CalledClassVisitor();
+    private final Map<Integer, int[]> superClassAndInterfacesByClass = new ConcurrentHashMap<>();
+
+    /**
+     * Number of class files analyzed by each task when a core is read in parallel
+     */
+    private static final int CLASSES_PER_TASK = 500;
+    private static final int MAX_PENDING_BATCHES = 2 * Runtime.getRuntime().availableProcessors();
 
 
     public static String getMethodKey(String className, String name, String desc) {
@@ -54,21 +70,75 @@ public class DeprecatedApi {
     }
 
     public void analyze(File coreFile) throws IOException {
-        Options options = Options.get();
-        try (WarReader warReader = new WarReader(coreFile, false)) {
-            String fileName = warReader.nextClass();
-            while (fileName != null) {
-                analyze(warReader.getInputStream());
-                fileName = warReader.nextClass();
+        try {
+            add(read(coreFile, Runnable::run, Runnable::run).join());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
             }
+            throw e;
         }
-        classes.removeAll(IGNORED_DEPRECATED_CLASSES);
     }
 
-    private void analyze(InputStream input) throws IOException {
-        final ClassReader classReader = new ClassReader(input);
-        classReader.accept(classVisitor,
-                ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+    /**
+     * Reads the APIs of a core without adding them yet: the class files are read by the I/O executor and analyzed in
+     * batches by the analysis executor, the reader waiting while too many batches are pending. The cores can be read
+     * in parallel, and then {@link #add(CoreApi) added} in a given order.
+     */
+    public static CompletableFuture<CoreApi> read(File coreFile, Executor ioExecutor, Executor analysisExecutor) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<CompletableFuture<CoreApi>> batches = new ArrayList<>();
+            Semaphore pendingBatches = new Semaphore(MAX_PENDING_BATCHES);
+            try (WarReader warReader = new WarReader(coreFile, false)) {
+                List<byte[]> batch = new ArrayList<>(CLASSES_PER_TASK);
+                String fileName = warReader.nextClass();
+                while (fileName != null) {
+                    batch.add(warReader.readClass());
+                    fileName = warReader.nextClass();
+                    if (batch.size() == CLASSES_PER_TASK || fileName == null) {
+                        List<byte[]> classFiles = batch;
+                        // rather than keeping more class files in memory
+                        pendingBatches.acquireUninterruptibly();
+                        CompletableFuture<CoreApi> future = CompletableFuture.supplyAsync(() -> analyze(classFiles), analysisExecutor);
+                        future.whenComplete((coreApi, failure) -> pendingBatches.release());
+                        batches.add(future);
+                        batch = new ArrayList<>(CLASSES_PER_TASK);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return batches;
+        }, ioExecutor).thenCompose(batches -> CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            // merged in the order of the class files, so that the first definition of a class is kept as before
+            CoreApi coreApi = new CoreApi();
+            for (CompletableFuture<CoreApi> batch : batches) {
+                coreApi.addAll(batch.join());
+            }
+            return coreApi;
+        }));
+    }
+
+    private static CoreApi analyze(List<byte[]> classFiles) {
+        CoreApi coreApi = new CoreApi();
+        ClassVisitor classVisitor = new CalledClassVisitor(coreApi);
+        for (byte[] data : classFiles) {
+            final ClassReader classReader = new ClassReader(data);
+            classReader.accept(classVisitor,
+                    ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        }
+        return coreApi;
+    }
+
+    /**
+     * Adds the APIs read from a core, the first core added defining the hierarchy of the classes in several cores
+     */
+    public void add(CoreApi coreApi) {
+        classes.addAll(coreApi.classes);
+        methods.addAll(coreApi.methods);
+        fields.addAll(coreApi.fields);
+        coreApi.superClassAndInterfacesByClass.forEach(superClassAndInterfacesByClass::putIfAbsent);
+        classes.removeAll(IGNORED_DEPRECATED_CLASSES);
     }
 
     public Set<String> getClasses() {
@@ -83,21 +153,47 @@ public class DeprecatedApi {
         return fields;
     }
 
+    /**
+     * Returns the hierarchy of all the classes of the analyzed cores, to be shared by the analyses of the plugins
+     */
+    public ClassHierarchy getClassHierarchy() {
+        return new ClassHierarchy(new HashMap<>(superClassAndInterfacesByClass));
+    }
+
     public void addClasses(Collection<String> additionalClasses) {
         classes.addAll(additionalClasses);
     }
 
+    /**
+     * APIs of a core, or of a batch of its classes
+     */
+    public static final class CoreApi {
+        private final Set<String> classes = new HashSet<>();
+        private final Set<String> methods = new HashSet<>();
+        private final Set<String> fields = new HashSet<>();
+        private final Map<Integer, int[]> superClassAndInterfacesByClass = new LinkedHashMap<>();
+
+        private void addAll(CoreApi coreApi) {
+            classes.addAll(coreApi.classes);
+            methods.addAll(coreApi.methods);
+            fields.addAll(coreApi.fields);
+            coreApi.superClassAndInterfacesByClass.forEach(superClassAndInterfacesByClass::putIfAbsent);
+        }
+    }
+
     /**
      * Record the methods that are deprecated and public/protected.
      */
-    private class CalledClassVisitor extends ClassVisitor {
+    private static class CalledClassVisitor extends ClassVisitor {
         private static final int OPCODE_PUBLIC = Opcodes.ACC_PUBLIC | Opcodes.ACC_PROTECTED;
         private static final int OPCODE_DEPRECATED = Opcodes.ACC_DEPRECATED;
 
+        private final CoreApi coreApi;
         private String currentClass;
 
-        CalledClassVisitor() {
+        CalledClassVisitor(CoreApi coreApi) {
             super(Opcodes.ASM9);
+            this.coreApi = coreApi;
         }
 
         private boolean isPublic(int asmAccess) {
@@ -112,10 +208,12 @@ public class DeprecatedApi {
         public void visit(int version, int access, String name, String signature, String superName,
                 String[] interfaces) {
             // log(name + " extends " + superName + " {");
+            int[] superClassAndInterfaces = DeprecatedUsage.getSuperClassAndInterfaces(superName, interfaces);
+            coreApi.superClassAndInterfacesByClass.putIfAbsent(Symbols.get().intern(name), superClassAndInterfaces);
             if (isPublic(access)) {
                 currentClass = name;
                 if (isDeprecated(access)) {
-                    classes.add(name);
+                    coreApi.classes.add(name);
                 }
             } else {
                 currentClass = null;
@@ -126,7 +224,7 @@ public class DeprecatedApi {
         public MethodVisitor visitMethod(int access, String name, String desc, String signature,
                 String[] exceptions) {
             if (currentClass != null && isDeprecated(access) && isPublic(access)) {
-                methods.add(getMethodKey(currentClass, name, desc));
+                coreApi.methods.add(getMethodKey(currentClass, name, desc));
             }
             return null;
         }
@@ -135,7 +233,7 @@ public class DeprecatedApi {
         public FieldVisitor visitField(int access, String name, String desc, String signature,
                 Object value) {
             if (currentClass != null && isDeprecated(access) && isPublic(access)) {
-                fields.add(getFieldKey(currentClass, name, desc));
+                coreApi.fields.add(getFieldKey(currentClass, name, desc));
             }
             return null;
         }
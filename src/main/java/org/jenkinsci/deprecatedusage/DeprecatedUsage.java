@@ -2,17 +2,19 @@ package org.jenkinsci.deprecatedusage;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
-import org.apache.commons.io.IOUtils;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
 
 import org.jenkinsci.deprecatedusage.search.SearchCriteria;
 import org.objectweb.asm.ClassReader;
@@ -28,13 +30,18 @@ public class DeprecatedUsage {
     public static final Set<String> IGNORED_PLUGINS = new HashSet<>(
             Arrays.asList("python-wrapper.hpi"));
 
+    private static final int[] NO_PROVIDERS = new int[0];
+
     private final Plugin plugin;
     private final boolean includePluginLibraries;
     private final SearchCriteria searchCriteria;
 
-    private final Set<String> classes = new LinkedHashSet<>();
-    private final Set<String> methods = new LinkedHashSet<>();
-    private final Set<String> fields = new LinkedHashSet<>();
+    private final Symbols symbols = Symbols.get();
+
+    // ids of Symbols, the keys are only built by the getters
+    private final IntSet classes = new IntSet();
+    private final IntSet methods = new IntSet();
+    private final IntSet fields = new IntSet();
 
     /**
      * Provider = methods we look for
@@ -43,7 +50,7 @@ public class DeprecatedUsage {
      * 
      * For a given provider method, returns the consumers methods that calls it inside their bodies
      */
-    private final Map<String, Set<String>> providerToConsumers = new HashMap<>();
+    private final Map<Integer, IntSet> providerToConsumers = new HashMap<>();
 
     /**
      * Provider = methods we look for
@@ -52,17 +59,118 @@ public class DeprecatedUsage {
      * 
      * For a given consumer method, returns the provider methods it calls inside its body
      */
-    private final Map<String, Set<String>> consumerToProviders = new HashMap<>();
+    private final Map<Integer, IntSet> consumerToProviders = new HashMap<>();
 
-    private final ClassVisitor indexerClassVisitor = new IndexerClassVisitor();
     private final ClassVisitor classVisitor = new CallersClassVisitor();
-    private final Map<String, List<String>> superClassAndInterfacesByClass = new HashMap<>();
+
+    /**
+     * Hierarchy of the classes of the cores, or null if the inherited members are only resolved with the classes of
+     * the plugin itself
+     */
+    private final ClassHierarchy classHierarchy;
+
+    private File pluginFile;
+
+    /**
+     * Classes defined by the plugin, to be added to the hierarchy of all plugins
+     */
+    private Map<Integer, int[]> definedClasses = Collections.emptyMap();
+
+    /**
+     * Ancestors (sorted) of the classes unknown to the cores and the plugin, with which the calls through them were
+     * resolved. The results are only valid with another hierarchy if these classes have the same ancestors in it.
+     */
+    private Map<Integer, int[]> ancestorsOfUnknownClasses = Collections.emptyMap();
+
+    /**
+     * When true, the classes defined by the plugin and the ancestors of the unknown classes are kept once the calls
+     * are resolved, to be written with the results
+     */
+    private boolean keepHierarchy;
+
+    /**
+     * Members called through classes unknown to the cores and the plugin, with their callers (when recorded). These
+     * calls are resolved with the classes of the plugin first, then again once the classes of all plugins are known.
+     */
+    private Map<Integer, IntSet> pendingCallersByMember = new HashMap<>();
+
+    /**
+     * For the class files skipped thanks to the prefilter, the classes they reference that are unknown to the cores
+     * and the plugin. They are read again if one of them inherits from a searched class.
+     */
+    private Map<String, int[]> unknownClassesBySkippedClassFile = new HashMap<>();
+
+    /**
+     * Facts collected while reading the classes, the call sites are resolved once the class hierarchy of the whole
+     * plugin is known
+     */
+    private ScanFacts scanFacts;
+
+    /**
+     * When true, only the facts that can match the search criteria are collected, otherwise all of them are collected
+     * so that they can be evaluated later against any criteria
+     */
+    private boolean filterWithCriteria = true;
+
+    /**
+     * When filtering with the criteria, classes whose constant pool references none of the names in this table are
+     * skipped without visiting their methods. Null if the criteria cannot enumerate the classes it looks for.
+     */
+    private ClassNameTable prefilter;
+
+    /**
+     * Class files skipped thanks to the prefilter
+     */
+    private Set<String> skippedClassFiles;
+
+    /**
+     * Number of classes whose content was visited, the ones skipped thanks to the prefilter are not counted
+     */
+    private int visitedClassCount;
+
+    /**
+     * When false, the classes, methods and fields used are read from the constant pools without visiting the method
+     * bodies, and the callers are not known
+     */
+    private boolean recordCallers = true;
+
+    /**
+     * Facts of the library jars already read for other plugins, or null to read all the library jars
+     */
+    private SharedLibraries sharedLibraries;
+
+    /**
+     * Facts of the class files already visited, or null to visit all the class files
+     */
+    private ClassFactsStore classFactsStore;
+
+    /**
+     * When true, the library jars are read by subtasks
+     */
+    private boolean parallelLibraries;
+
+    /**
+     * Bounds the bytes read at a time by the subtasks with the ones of the running analyses, or null to fork all the
+     * library jars
+     */
+    private AnalysisScheduler analysisScheduler;
+
+    private boolean analysisFailed;
 
     public DeprecatedUsage(String pluginName, String pluginVersion, SearchCriteria searchCriteria, boolean includePluginLibraries) {
+        this(pluginName, pluginVersion, searchCriteria, includePluginLibraries, null);
+    }
+
+    /**
+     * @param classHierarchy hierarchy of the classes of the cores, see {@link #resolvePendingCalls(ClassHierarchy)}
+     */
+    public DeprecatedUsage(String pluginName, String pluginVersion, SearchCriteria searchCriteria, boolean includePluginLibraries,
+                           ClassHierarchy classHierarchy) {
         super();
         this.plugin = new Plugin(pluginName, pluginVersion);
         this.includePluginLibraries = includePluginLibraries;
         this.searchCriteria = searchCriteria;
+        this.classHierarchy = classHierarchy;
     }
 
     public void analyze(File pluginFile) throws IOException {
@@ -70,6 +178,30 @@ public class DeprecatedUsage {
             return;
         }
 
+        this.pluginFile = pluginFile;
+        evaluate(scan(pluginFile, true));
+    }
+
+    /**
+     * Same as {@link #analyze(File)}, but the facts read from the file are reused from the given cache when available
+     * and stored into it otherwise.
+     */
+    public void analyze(JenkinsFile jenkinsFile, ScanCache scanCache) throws IOException {
+        File pluginFile = jenkinsFile.getFile();
+        if (IGNORED_PLUGINS.contains(pluginFile.getName())) {
+            return;
+        }
+
+        this.pluginFile = pluginFile;
+        ScanFacts facts = scanCache.load(jenkinsFile, includePluginLibraries, recordCallers);
+        if (facts == null) {
+            facts = scan(pluginFile, false);
+            scanCache.store(jenkinsFile, includePluginLibraries, recordCallers, facts);
+        }
+        evaluate(facts);
+    }
+
+    private ScanFacts scan(File pluginFile, boolean filterWithCriteria) throws IOException {
         if (this.includePluginLibraries) {
             long fileSize = pluginFile.length();
             if (fileSize > 50 * 1024 * 1024) {
@@ -77,35 +209,448 @@ public class DeprecatedUsage {
             }
         }
 
-        analyzeWithClassVisitor(pluginFile, indexerClassVisitor);
-        analyzeWithClassVisitor(pluginFile, classVisitor);
+        // single pass: the class hierarchy and the call sites are collected together,
+        // then the call sites are resolved against the complete hierarchy
+        this.filterWithCriteria = filterWithCriteria;
+        this.scanFacts = new ScanFacts();
+        this.prefilter = filterWithCriteria ? ClassNameTable.of(searchCriteria) : null;
+        if (prefilter != null && classHierarchy != null) {
+            // classes of the cores inheriting from a searched class are also searched
+            prefilter = classHierarchy.withSubclassesOf(prefilter);
+        }
+        this.skippedClassFiles = new HashSet<>();
+        try {
+            analyzeWithClassVisitor(pluginFile, classVisitor, null);
+            if (prefilter != null && !skippedClassFiles.isEmpty()) {
+                // a skipped class may call a member inherited from a target by a class of the plugin,
+                // in that case the skipped classes are read again, now also looking for those classes of the plugin
+                Set<String> subclasses = new ClassHierarchy(scanFacts.getSuperClassAndInterfacesByClass(), classHierarchy)
+                        .findSubclassesOf(prefilter);
+                if (!subclasses.isEmpty()) {
+                    Set<String> classFilesToRead = skippedClassFiles;
+                    prefilter = prefilter.with(subclasses);
+                    skippedClassFiles = new HashSet<>();
+                    analyzeWithClassVisitor(pluginFile, classVisitor, classFilesToRead);
+                }
+            }
+            return scanFacts;
+        } finally {
+            scanFacts = null;
+            prefilter = null;
+            skippedClassFiles = null;
+        }
+    }
+
+    private void evaluate(ScanFacts facts) {
+        for (String className : facts.getReferencedClasses()) {
+            if (searchCriteria.isLookingForClass(className)) {
+                classes.add(symbols.intern(className));
+            }
+        }
+        ClassHierarchy hierarchy = new ClassHierarchy(facts.getSuperClassAndInterfacesByClass(), classHierarchy);
+        Map<Integer, int[]> providersByCalledMember = new HashMap<>();
+        for (ScanFacts.CallSite callSite : facts.getCallSites()) {
+            int calledMember = calledMember(callSite);
+            called(calledMember, callSite.caller, hierarchy, providersByCalledMember);
+            if (classHierarchy != null && !hierarchy.isComplete(callSite.className)) {
+                // may also inherit from a class of another plugin
+                deferCall(calledMember, callSite.caller);
+            }
+        }
+        if (classHierarchy != null) {
+            definedClasses = facts.getSuperClassAndInterfacesByClass();
+            unknownClassesBySkippedClassFile.replaceAll((fileName, classNames) ->
+                    Arrays.stream(classNames).filter(className -> !hierarchy.isComplete(className)).toArray());
+            unknownClassesBySkippedClassFile.values().removeIf(classNames -> classNames.length == 0);
+        }
+    }
+
+    private int calledMember(ScanFacts.CallSite callSite) {
+        return symbols.member(callSite.className, callSite.name, callSite.field ? Symbols.NO_DESC : callSite.desc);
+    }
+
+    /**
+     * @param providersByCalledMember the members already resolved with the same hierarchy, so that each called member
+     *                                is resolved once, whatever the number of calls to it
+     */
+    private void called(int calledMember, int caller, ClassHierarchy hierarchy, Map<Integer, int[]> providersByCalledMember) {
+        int[] providers = providersByCalledMember.get(calledMember);
+        if (providers == null) {
+            int owner = symbols.owner(calledMember);
+            if (symbols.isField(calledMember)) {
+                providers = fieldCalled(owner, symbols.name(calledMember), hierarchy);
+            } else {
+                providers = methodCalled(owner, symbols.name(calledMember), symbols.desc(calledMember), hierarchy);
+            }
+            providersByCalledMember.put(calledMember, providers);
+        }
+        if (recordCallers) {
+            for (int provider : providers) {
+                link(provider, caller);
+            }
+        }
+    }
+
+    private void deferCall(int calledMember, int caller) {
+        IntSet callers = pendingCallersByMember.computeIfAbsent(calledMember, m -> new IntSet());
+        if (recordCallers) {
+            callers.add(caller);
+        }
+    }
+
+    /**
+     * Returns the classes defined by the plugin, when analyzed with the hierarchy of the cores
+     */
+    Map<Integer, int[]> getDefinedClasses() {
+        return definedClasses;
+    }
+
+    /**
+     * When analyzed with the hierarchy of the cores, resolves the calls through classes of other plugins once the
+     * classes of all plugins are known. The class files skipped by the prefilter that reference a class of another
+     * plugin inheriting from a searched class are read again. The classes of the plugin itself take precedence over
+     * the classes of the same name in other plugins.
+     *
+     * @param allClasses the hierarchy of the cores, with the {@link #getDefinedClasses() classes of all plugins}
+     */
+    public void resolvePendingCalls(ClassHierarchy allClasses) throws IOException {
+        try {
+            ClassHierarchy hierarchy = withDefinedClasses(allClasses);
+            ClassNameTable searchedClasses = ClassNameTable.of(searchCriteria);
+            Set<String> classFilesToRead = new HashSet<>();
+            unknownClassesBySkippedClassFile.forEach((fileName, classNames) -> {
+                for (int className : classNames) {
+                    if (leadsToSearchedClass(className, hierarchy, searchedClasses)) {
+                        classFilesToRead.add(fileName);
+                        break;
+                    }
+                }
+            });
+            if (!classFilesToRead.isEmpty()) {
+                this.filterWithCriteria = true;
+                this.scanFacts = new ScanFacts();
+                try {
+                    analyzeWithClassVisitor(pluginFile, classVisitor, classFilesToRead);
+                    for (String className : scanFacts.getReferencedClasses()) {
+                        classes.add(symbols.intern(className));
+                    }
+                    for (ScanFacts.CallSite callSite : scanFacts.getCallSites()) {
+                        deferCall(calledMember(callSite), callSite.caller);
+                    }
+                } finally {
+                    scanFacts = null;
+                }
+            }
+            Map<Integer, int[]> providersByCalledMember = new HashMap<>();
+            pendingCallersByMember.forEach((calledMember, callers) -> {
+                if (!leadsToSearchedClass(symbols.owner(calledMember), hierarchy, searchedClasses)) {
+                    // already resolved with the classes of the plugin
+                    return;
+                }
+                if (callers.isEmpty()) {
+                    called(calledMember, ScanFacts.NO_CALLER, hierarchy, providersByCalledMember);
+                } else {
+                    callers.forEach(caller -> called(calledMember, caller, hierarchy, providersByCalledMember));
+                }
+            });
+            if (keepHierarchy) {
+                Map<Integer, int[]> ancestors = new HashMap<>();
+                for (int calledMember : pendingCallersByMember.keySet()) {
+                    ancestors.computeIfAbsent(symbols.owner(calledMember), className -> sortedAncestors(className, hierarchy));
+                }
+                for (int[] classNames : unknownClassesBySkippedClassFile.values()) {
+                    for (int className : classNames) {
+                        ancestors.computeIfAbsent(className, c -> sortedAncestors(c, hierarchy));
+                    }
+                }
+                if (!ancestors.isEmpty()) {
+                    ancestorsOfUnknownClasses = ancestors;
+                }
+            }
+        } finally {
+            pendingCallersByMember = new HashMap<>();
+            if (!keepHierarchy) {
+                definedClasses = Collections.emptyMap();
+            }
+            unknownClassesBySkippedClassFile = new HashMap<>();
+        }
+    }
+
+    /**
+     * Returns the hierarchy of all classes, where the classes defined by the plugin take precedence
+     */
+    private ClassHierarchy withDefinedClasses(ClassHierarchy allClasses) {
+        return definedClasses.isEmpty() ? allClasses : allClasses.overriddenBy(definedClasses);
+    }
+
+    /**
+     * Returns true if an ancestor of the class may be searched, always true when the criteria cannot enumerate the
+     * classes it looks for
+     */
+    private boolean leadsToSearchedClass(int className, ClassHierarchy hierarchy, ClassNameTable searchedClasses) {
+        if (searchedClasses == null) {
+            return true;
+        }
+        for (int ancestor : hierarchy.getClassAndAncestors(className)) {
+            if (searchedClasses.contains(symbols.symbol(ancestor))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] sortedAncestors(int className, ClassHierarchy allClasses) {
+        int[] classAndAncestors = allClasses.getClassAndAncestors(className).clone();
+        Arrays.sort(classAndAncestors);
+        return classAndAncestors;
+    }
+
+    /**
+     * Returns true if the calls through classes unknown to the cores and the plugin resolve the same way with the
+     * given hierarchy as with the one the results were computed with
+     *
+     * @param allClasses the hierarchy of the cores, with the {@link #getDefinedClasses() classes of all plugins}
+     */
+    boolean isResolvedSameWay(ClassHierarchy allClasses) {
+        if (ancestorsOfUnknownClasses.isEmpty()) {
+            return true;
+        }
+        ClassHierarchy hierarchy = withDefinedClasses(allClasses);
+        for (Map.Entry<Integer, int[]> entry : ancestorsOfUnknownClasses.entrySet()) {
+            if (!Arrays.equals(entry.getValue(), sortedAncestors(entry.getKey(), hierarchy))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the ancestors of the classes unknown to the cores and the plugin, see {@link #isResolvedSameWay(ClassHierarchy)}
+     */
+    Map<Integer, int[]> getAncestorsOfUnknownClasses() {
+        return ancestorsOfUnknownClasses;
+    }
+
+    /**
+     * If true, the {@link #getDefinedClasses() classes defined by the plugin} and the
+     * {@link #getAncestorsOfUnknownClasses() ancestors of the unknown classes} are kept once the calls are resolved,
+     * so that they can be written with the results. False by default.
+     */
+    public void setKeepHierarchy(boolean keepHierarchy) {
+        this.keepHierarchy = keepHierarchy;
+    }
+
+    /**
+     * Returns the number of classes of the plugin whose content was visited, the ones skipped thanks to the prefilter
+     * are not counted
+     */
+    int getVisitedClassCount() {
+        return visitedClassCount;
+    }
+
+    private void recordCallSite(boolean field, String owner, String name, String desc, CallersMethodVisitor caller) {
+        int className = symbols.intern(owner);
+        // same filter as the one applied by methodCalled / fieldCalled, done early to keep fewer call sites in memory
+        if (!filterWithCriteria || shouldAnalyze(className)) {
+            scanFacts.addCallSite(new ScanFacts.CallSite(field, className, symbols.intern(name), symbols.intern(desc),
+                    caller != null ? caller.getId() : ScanFacts.NO_CALLER));
+        }
+    }
+
+    private void recordReferencedClass(String s) {
+        if (filterWithCriteria) {
+            if (searchCriteria.isLookingForClass(s)) {
+                scanFacts.addReferencedClass(s);
+            } else if (s.length() > 2 && s.charAt(0) == 'L' && s.charAt(s.length() - 1) == ';') {
+                String name = s.substring(1, s.length() - 1);
+                if (searchCriteria.isLookingForClass(name)) {
+                    scanFacts.addReferencedClass(name);
+                }
+            }
+        } else if (ScanFacts.isPossibleClassName(s)) {
+            scanFacts.addReferencedClass(s);
+        } else if (s.length() > 2 && s.charAt(0) == 'L' && s.charAt(s.length() - 1) == ';') {
+            String name = s.substring(1, s.length() - 1);
+            if (ScanFacts.isPossibleClassName(name)) {
+                scanFacts.addReferencedClass(name);
+            }
+        }
     }
 
-    
     public void analyzeWithClassVisitor(File pluginFile, ClassVisitor aClassVisitor)
             throws IOException {
+        analyzeWithClassVisitor(pluginFile, aClassVisitor, null);
+    }
+
+    /**
+     * @param classFilesToRead if not null, only the class files with those names are read
+     */
+    private void analyzeWithClassVisitor(File pluginFile, ClassVisitor aClassVisitor, Set<String> classFilesToRead)
+            throws IOException {
         // recent plugins package their classes as a jar file with the same name as the war file in
         // WEB-INF/lib/ while older plugins were packaging their classes in WEB-INF/classes/
-        try (WarReader warReader = new WarReader(pluginFile, !includePluginLibraries)) {
+        boolean readingAllLibraries = includePluginLibraries && aClassVisitor == classVisitor && classFilesToRead == null;
+        boolean shareLibraries = sharedLibraries != null && readingAllLibraries;
+        boolean forkLibraries = parallelLibraries && readingAllLibraries;
+        ScanFacts pluginFacts = scanFacts;
+        ClassNameTable pluginPrefilter = prefilter;
+        // when the library jars are read by subtasks, the facts of the plugin are merged once they are all read, in
+        // the order of the jars, so that they are the same as when read sequentially
+        List<Supplier<ScanFacts>> parts = null;
+        if (forkLibraries) {
+            parts = new ArrayList<>();
+            scanFacts = new ScanFacts();
+        }
+        // library jar being read for all the plugins bundling it
+        String libraryKey = null;
+        try (WarReader warReader = new WarReader(pluginFile, !includePluginLibraries, shareLibraries || forkLibraries)) {
+            WarReader.LibraryJar library = null;
             String fileName = warReader.nextClass();
-            while (fileName != null) {
+            while (true) {
+                WarReader.LibraryJar currentLibrary = (shareLibraries || forkLibraries) && fileName != null ? warReader.getCurrentLibrary() : null;
+                if (currentLibrary != library) {
+                    if (libraryKey != null) {
+                        sharedLibraries.complete(libraryKey, scanFacts);
+                        pluginFacts.addAll(scanFacts);
+                        scanFacts = pluginFacts;
+                        prefilter = pluginPrefilter;
+                        libraryKey = null;
+                    }
+                    library = currentLibrary;
+                    if (library != null) {
+                        String key = library.getKey() + (filterWithCriteria ? "" : "-all") + (recordCallers ? "" : "-refs");
+                        ScanFacts libraryFacts = shareLibraries ? sharedLibraries.claim(key) : null;
+                        if (libraryFacts != null || forkLibraries) {
+                            if (forkLibraries) {
+                                ScanFacts ownFacts = scanFacts;
+                                parts.add(() -> ownFacts);
+                                if (libraryFacts != null) {
+                                    ScanFacts sharedFacts = libraryFacts;
+                                    parts.add(() -> sharedFacts);
+                                } else {
+                                    parts.add(readOrForkLibrary(warReader.getCurrentLibraryContent(), shareLibraries ? key : null));
+                                }
+                                scanFacts = new ScanFacts();
+                            } else {
+                                pluginFacts.addAll(libraryFacts);
+                            }
+                            warReader.skipCurrentJar();
+                            library = null;
+                            fileName = warReader.nextClass();
+                            continue;
+                        }
+                        libraryKey = key;
+                        scanFacts = new ScanFacts();
+                        // the prefilter depends on the classes of the plugin, the library is read without it
+                        prefilter = null;
+                    }
+                }
+                if (fileName == null) {
+                    break;
+                }
                 try {
-                    @SuppressWarnings("resource") // handled by warReader.nextClass()
-                    InputStream is = warReader.getInputStream();
-                    analyze(is, aClassVisitor);
+                    if (classFilesToRead == null || classFilesToRead.contains(fileName)) {
+                        analyze(fileName, warReader.readClass(), aClassVisitor);
+                    }
                 } catch (Exception e) {
                     System.err.println("Failed to fully analyze " + pluginFile + ".  " + fileName + " not scanned due to " + e.getMessage());
                 }
                 fileName = warReader.nextClass();
             }
+            if (parts != null) {
+                ScanFacts ownFacts = scanFacts;
+                parts.add(() -> ownFacts);
+                for (Supplier<ScanFacts> part : parts) {
+                    pluginFacts.addAll(part.get());
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            if (libraryKey != null) {
+                sharedLibraries.fail(libraryKey);
+                prefilter = pluginPrefilter;
+            }
+            scanFacts = pluginFacts;
         }
     }
 
+    /**
+     * Reads a library jar in a subtask, with its own visitor and facts, so that the library jars of a large plugin
+     * or core are read in parallel. When its size does not fit in the bytes analyzed at a time, it is read now
+     * instead, so that a plugin does not read all its library jars at once.
+     *
+     * @param sharedKey the key of the library in {@link #sharedLibraries} if it was claimed, else null
+     * @return the facts of the library, waiting for the subtask if forked
+     */
+    private Supplier<ScanFacts> readOrForkLibrary(ByteBuffer content, String sharedKey) {
+        long size = content.remaining();
+        if (analysisScheduler != null && !analysisScheduler.tryReserve(size)) {
+            ScanFacts facts = readLibrary(content, sharedKey);
+            return () -> facts;
+        }
+        return ForkJoinTask.adapt(() -> {
+            try {
+                return readLibrary(content, sharedKey);
+            } finally {
+                if (analysisScheduler != null) {
+                    analysisScheduler.release(size);
+                }
+            }
+        }).fork()::join;
+    }
+
+    private ScanFacts readLibrary(ByteBuffer content, String sharedKey) {
+        try {
+            ScanFacts facts = readLibrary(content);
+            if (sharedKey != null) {
+                sharedLibraries.complete(sharedKey, facts);
+            }
+            return facts;
+        } catch (IOException | RuntimeException e) {
+            if (sharedKey != null) {
+                sharedLibraries.fail(sharedKey);
+            }
+            throw e instanceof IOException ? new UncheckedIOException((IOException) e) : (RuntimeException) e;
+        }
+    }
+
+    private ScanFacts readLibrary(ByteBuffer content) throws IOException {
+        DeprecatedUsage reader = new DeprecatedUsage(plugin.artifactId, plugin.version, searchCriteria, includePluginLibraries, classHierarchy);
+        reader.recordCallers = recordCallers;
+        reader.classFactsStore = classFactsStore;
+        reader.filterWithCriteria = filterWithCriteria;
+        reader.scanFacts = new ScanFacts();
+        // the prefilter depends on the classes of the plugin, the library is read without it
+        reader.prefilter = null;
+        WarReader.readClasses(content, (fileName, data) -> {
+            try {
+                reader.analyze(fileName, data, reader.classVisitor);
+            } catch (Exception e) {
+                System.err.println("Failed to fully analyze " + pluginFile + ".  " + fileName + " not scanned due to " + e.getMessage());
+            }
+        });
+        return reader.scanFacts;
+    }
+
     private static final ThreadLocal<char[]> bufs = ThreadLocal.withInitial(() -> new char[99999]);
 
-    private void analyze(InputStream input, ClassVisitor aClassVisitor) throws IOException {
-        byte[] data = IOUtils.toByteArray(input);
+    private void analyze(String fileName, byte[] data, ClassVisitor aClassVisitor) {
         final ClassReader classReader = new ClassReader(data);
+        if (prefilter != null) {
+            if (recordReferencedClasses(classReader, data, prefilter)) {
+                unknownClassesBySkippedClassFile.remove(fileName);
+                accept(classReader, data, aClassVisitor);
+            } else {
+                // the hierarchy is still needed to resolve the calls from the other classes
+                recordHierarchy(classReader.getClassName(), classReader.getSuperName(), classReader.getInterfaces());
+                skippedClassFiles.add(fileName);
+                if (classHierarchy != null) {
+                    unknownClassesBySkippedClassFile.put(fileName, getReferencedClasses(classReader));
+                }
+            }
+            return;
+        }
         char[] buf = bufs.get();
         for (int i = 0; i < classReader.getItemCount(); i++) {
             int offset = classReader.getItem(i);
@@ -129,80 +674,306 @@ public class DeprecatedUsage {
                         buf[strLength++] = (char) (((currentByte & 0xF) << 12) + ((data[currentOffset++] & 0x3F) << 6) + (data[currentOffset++] & 0x3F));
                     }
                 }
-                String s = new String(buf, 0, strLength);
-                if (searchCriteria.isLookingForClass(s)) {
-                    classes.add(s);
-                } else if (s.length() > 2 && s.charAt(0) == 'L' && s.charAt(s.length() - 1) == ';') {
-                    String name = s.substring(1, s.length() - 1);
-                    if (searchCriteria.isLookingForClass(name)) {
-                        classes.add(name);
-                    }
-                }
+                recordReferencedClass(new String(buf, 0, strLength));
                 continue;
             }
         }
-        classReader.accept(aClassVisitor, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        accept(classReader, data, aClassVisitor);
+    }
+
+    private void accept(ClassReader classReader, byte[] data, ClassVisitor aClassVisitor) {
+        if (classFactsStore == null || aClassVisitor != classVisitor) {
+            accept(classReader, aClassVisitor);
+            return;
+        }
+        ClassFactsStore.Key key = ClassFactsStore.key(data, filterWithCriteria, recordCallers);
+        if (!classFactsStore.addTo(key, scanFacts)) {
+            ScanFacts facts = scanFacts;
+            scanFacts = new ScanFacts();
+            try {
+                accept(classReader, aClassVisitor);
+                classFactsStore.put(key, scanFacts);
+                facts.addAll(scanFacts);
+            } finally {
+                scanFacts = facts;
+            }
+        }
+    }
+
+    private void accept(ClassReader classReader, ClassVisitor aClassVisitor) {
+        visitedClassCount++;
+        if (recordCallers || aClassVisitor != classVisitor) {
+            classReader.accept(aClassVisitor, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        } else {
+            recordHierarchy(classReader.getClassName(), classReader.getSuperName(), classReader.getInterfaces());
+            recordMemberReferences(classReader);
+        }
+    }
+
+    /**
+     * Records the methods and fields of the constant pool as call sites without caller. All the methods and fields
+     * used by the instructions of the class (or by its method handles) are listed there.
+     * <p>
+     * This is a superset of what visiting the method bodies records: the methods implementing lambdas and method
+     * references are found both ways, but the constant pool also lists the bootstrap methods of the invokedynamic
+     * instructions and the method handles of their other arguments, as well as the references that no instruction
+     * uses (which javac does not generate). Telling them apart would need to visit the method bodies.
+     */
+    private void recordMemberReferences(ClassReader classReader) {
+        char[] buf = new char[classReader.getMaxStringLength()];
+        for (int i = 1; i < classReader.getItemCount(); i++) {
+            int offset = classReader.getItem(i);
+            if (offset == 0) {
+                continue;
+            }
+            int tag = classReader.readByte(offset - 1);
+            // CONSTANT_Fieldref, CONSTANT_Methodref or CONSTANT_InterfaceMethodref: index of the class, then index
+            // of the name and type
+            if (tag == 9 || tag == 10 || tag == 11) {
+                String owner = classReader.readClass(offset, buf);
+                int nameAndType = classReader.getItem(classReader.readUnsignedShort(offset + 2));
+                String name = classReader.readUTF8(nameAndType, buf);
+                String desc = classReader.readUTF8(nameAndType + 2, buf);
+                recordCallSite(tag == 9, owner, name, desc, null);
+            }
+        }
+    }
+
+    /**
+     * Looks for the names of the table in the UTF8 constants of the class, without decoding them.
+     *
+     * @return true if at least one of them was found
+     */
+    private boolean recordReferencedClasses(ClassReader classReader, byte[] data, ClassNameTable table) {
+        boolean found = false;
+        for (int i = 0; i < classReader.getItemCount(); i++) {
+            int offset = classReader.getItem(i);
+            if (offset == 0 || data[offset - 1] != 1) {
+                continue;
+            }
+            int length = classReader.readUnsignedShort(offset);
+            int start = offset + 2;
+            String className = table.find(data, start, length);
+            if (className == null && length > 2 && data[start] == 'L' && data[start + length - 1] == ';') {
+                className = table.find(data, start + 1, length - 2);
+            }
+            if (className != null) {
+                found = true;
+                if (searchCriteria.isLookingForClass(className)) {
+                    scanFacts.addReferencedClass(className);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the ids of the classes listed in the constant pool, except the java ones and the arrays
+     */
+    private int[] getReferencedClasses(ClassReader classReader) {
+        char[] buf = new char[classReader.getMaxStringLength()];
+        IntSet classNames = new IntSet();
+        for (int i = 1; i < classReader.getItemCount(); i++) {
+            int offset = classReader.getItem(i);
+            // CONSTANT_Class, whose content is the index of its name
+            if (offset != 0 && classReader.readByte(offset - 1) == 7) {
+                String className = classReader.readUTF8(offset, buf);
+                if (className.charAt(0) != '[' && !isJavaClass(className)) {
+                    classNames.add(symbols.intern(className));
+                }
+            }
+        }
+        return classNames.toArray();
+    }
+
+    private void recordHierarchy(String name, String superName, String[] interfaces) {
+        // also recorded without super class and interfaces, to know that the class is defined here
+        scanFacts.addSuperClassAndInterfaces(symbols.intern(name), getSuperClassAndInterfaces(superName, interfaces));
+    }
+
+    /**
+     * Returns the ids of the super class and interfaces, except the java ones
+     */
+    static int[] getSuperClassAndInterfaces(String superName, String[] interfaces) {
+        Symbols symbols = Symbols.get();
+        final int[] superClassAndInterfaces = new int[1 + (interfaces != null ? interfaces.length : 0)];
+        int count = 0;
+        // superClass may be null for java.lang.Object and module-info.class
+        // Object would have been filtered but we see lots of module-info classes
+        if (superName != null && !isJavaClass(superName)) {
+            superClassAndInterfaces[count++] = symbols.intern(superName);
+        }
+        if (interfaces != null) {
+            for (final String anInterface : interfaces) {
+                if (!isJavaClass(anInterface)) {
+                    superClassAndInterfaces[count++] = symbols.intern(anInterface);
+                }
+            }
+        }
+        return count == superClassAndInterfaces.length ? superClassAndInterfaces : Arrays.copyOf(superClassAndInterfaces, count);
+    }
+
+    /**
+     * Restores the results of a previous analysis of the same plugin version, instead of analyzing it.
+     *
+     * @param definedClasses            the classes defined by the plugin, added to the hierarchy of all plugins
+     * @param ancestorsOfUnknownClasses see {@link #isResolvedSameWay(ClassHierarchy)}
+     */
+    void restore(Set<String> classes, Set<String> methods, Set<String> fields, Map<String, Set<String>> providerToConsumers,
+                 Map<Integer, int[]> definedClasses, Map<Integer, int[]> ancestorsOfUnknownClasses) {
+        this.definedClasses = definedClasses;
+        // sorted by the ids of this run
+        ancestorsOfUnknownClasses.values().forEach(Arrays::sort);
+        this.ancestorsOfUnknownClasses = ancestorsOfUnknownClasses;
+        this.keepHierarchy = true;
+        classes.forEach(className -> this.classes.add(symbols.intern(className)));
+        methods.forEach(methodKey -> this.methods.add(symbols.parseKey(methodKey)));
+        fields.forEach(fieldKey -> this.fields.add(symbols.parseKey(fieldKey)));
+        providerToConsumers.forEach((provider, consumers) -> {
+            for (String consumer : consumers) {
+                link(symbols.parseKey(provider), symbols.parseKey(consumer));
+            }
+        });
+    }
+
+    private void link(int provider, int consumer) {
+        providerToConsumers.computeIfAbsent(provider, s -> new IntSet()).add(consumer);
+        consumerToProviders.computeIfAbsent(consumer, s -> new IntSet()).add(provider);
+    }
+
+    /**
+     * If false, the methods and fields used are read from the constant pools without visiting the method bodies:
+     * faster, but the provider/consumer graphs stay empty and the members referenced only by the bootstrap methods of
+     * invokedynamic instructions are reported too. True by default.
+     */
+    public void setRecordCallers(boolean recordCallers) {
+        this.recordCallers = recordCallers;
+    }
+
+    /**
+     * When the libraries of the plugin are included, the library jars also bundled by other plugins analyzed with
+     * the same criteria are only read once
+     */
+    public void setSharedLibraries(SharedLibraries sharedLibraries) {
+        this.sharedLibraries = sharedLibraries;
+    }
+
+    /**
+     * When the libraries of the plugin are included, each library jar is read by a fork/join subtask, in parallel
+     * with the classes of the plugin. False by default.
+     */
+    public void setParallelLibraries(boolean parallelLibraries) {
+        this.parallelLibraries = parallelLibraries;
+    }
+
+    /**
+     * The library jars read by subtasks are charged to the bytes analyzed at a time by the scheduler running the
+     * analysis, and read by the analysis itself when they do not fit
+     */
+    void setAnalysisScheduler(AnalysisScheduler analysisScheduler) {
+        this.analysisScheduler = analysisScheduler;
+    }
+
+    /**
+     * The class files whose facts are in the store are not visited again. The store must only be shared with the
+     * analyses using the same criteria.
+     */
+    public void setClassFactsStore(ClassFactsStore classFactsStore) {
+        this.classFactsStore = classFactsStore;
+    }
+
+    void setAnalysisFailed() {
+        this.analysisFailed = true;
+    }
+
+    /**
+     * Returns true if the analysis of the plugin failed, so that its results are incomplete
+     */
+    public boolean isAnalysisFailed() {
+        return analysisFailed;
     }
 
     public Plugin getPlugin() { return plugin; }
 
     public Set<String> getClasses() {
-        return new TreeSet<>(classes);
+        Set<String> classNames = new TreeSet<>();
+        classes.forEach(className -> classNames.add(symbols.symbol(className)));
+        return classNames;
     }
 
     public Set<String> getMethods() {
-        return new TreeSet<>(methods);
+        return toKeys(methods, new TreeSet<>());
     }
 
     public Set<String> getFields() {
-        return new TreeSet<>(fields);
+        return toKeys(fields, new TreeSet<>());
     }
 
     public Map<String, Set<String>> getProviderToConsumers() {
-        return providerToConsumers;
+        return toKeys(providerToConsumers);
     }
 
     public Map<String, Set<String>> getConsumerToProviders() {
-        return consumerToProviders;
+        return toKeys(consumerToProviders);
     }
 
     public Set<String> getNewSignatures() {
-        return new HashSet<>(consumerToProviders.keySet());
+        Set<String> signatures = new HashSet<>();
+        for (int consumer : consumerToProviders.keySet()) {
+            signatures.add(symbols.key(consumer));
+        }
+        return signatures;
+    }
+
+    private Set<String> toKeys(IntSet members, Set<String> keys) {
+        members.forEach(member -> keys.add(symbols.key(member)));
+        return keys;
+    }
+
+    private Map<String, Set<String>> toKeys(Map<Integer, IntSet> graph) {
+        Map<String, Set<String>> keys = new HashMap<>();
+        graph.forEach((member, members) -> keys.put(symbols.key(member), toKeys(members, new HashSet<>())));
+        return keys;
     }
 
     public boolean hasDeprecatedUsage() {
         return !classes.isEmpty() || !methods.isEmpty() || !fields.isEmpty();
     }
 
-    void methodCalled(String className, String name, String desc, String callerClassName, String callerName, String callerDesc) {
-        if (!shouldAnalyze(className)) {
-            return;
+    /**
+     * Records the classes and methods looked for in the resolution of the called method
+     *
+     * @return the methods to link to the callers
+     */
+    private int[] methodCalled(int owner, int name, int desc, ClassHierarchy hierarchy) {
+        if (!shouldAnalyze(owner)) {
+            return NO_PROVIDERS;
         }
-
-        String methodKey = DeprecatedApi.getMethodKey(className, name, desc);
-
-        boolean lookingForClass = searchCriteria.isLookingForClass(className);
-        boolean lookingForMethodKey = searchCriteria.isLookingForMethod(methodKey, className, name);
-        if (lookingForClass || lookingForMethodKey) {
-            if (lookingForClass) {
-                classes.add(className);
-            }
-            if (lookingForMethodKey) {
-                methods.add(methodKey);
+        IntSet providers = null;
+        // the method may be inherited, and is looked for in each ancestor
+        for (int className : hierarchy.getClassAndAncestors(owner)) {
+            if (className != owner && !shouldAnalyze(className)) {
+                continue;
             }
+            int methodKey = symbols.member(className, name, desc);
 
-            String callerSignature = DeprecatedApi.getMethodKey(callerClassName, callerName, callerDesc);
-            
-            providerToConsumers.computeIfAbsent(methodKey, s -> new HashSet<>()).add(callerSignature);
-            consumerToProviders.computeIfAbsent(callerSignature, s -> new HashSet<>()).add(methodKey);
-        }
+            boolean lookingForClass = searchCriteria.isLookingForClass(className);
+            boolean lookingForMethodKey = searchCriteria.isLookingForMethod(methodKey);
+            if (lookingForClass || lookingForMethodKey) {
+                if (lookingForClass) {
+                    classes.add(className);
+                }
+                if (lookingForMethodKey) {
+                    methods.add(methodKey);
+                }
 
-        final List<String> superClassAndInterfaces = superClassAndInterfacesByClass.get(className);
-        if (superClassAndInterfaces != null) {
-            for (final String superClassOrInterface : superClassAndInterfaces) {
-                methodCalled(superClassOrInterface, name, desc, callerClassName, callerName, callerDesc);
+                if (providers == null) {
+                    providers = new IntSet();
+                }
+                providers.add(methodKey);
             }
         }
+        return providers == null ? NO_PROVIDERS : providers.toArray();
     }
 
     /**
@@ -210,8 +981,8 @@ public class DeprecatedUsage {
      *
      * @see Options
      */
-    private boolean shouldAnalyze(String className)  {
-        if (className.endsWith("DefaultTypeTransformation")) {
+    private boolean shouldAnalyze(int className)  {
+        if (symbols.symbol(className).endsWith("DefaultTypeTransformation")) {
             // various DefaultTypeTransformation#box signatures seem false positive in plugins written in Groovy
             return false;
         }
@@ -219,36 +990,41 @@ public class DeprecatedUsage {
         return searchCriteria.shouldAnalyzeClass(className);
     }
 
-    void fieldCalled(String className, String name, String desc, String callerClassName, String callerName, String callerDesc) {
-        if (!shouldAnalyze(className)) {
-            return;
+    /**
+     * Records the classes and fields looked for in the resolution of the accessed field
+     *
+     * @return the fields to link to the callers
+     */
+    private int[] fieldCalled(int owner, int name, ClassHierarchy hierarchy) {
+        if (!shouldAnalyze(owner)) {
+            return NO_PROVIDERS;
         }
-
-        String fieldKey = DeprecatedApi.getFieldKey(className, name, desc);
-        
-        boolean lookingForClass = searchCriteria.isLookingForClass(className);
-        boolean lookingForFieldKey = searchCriteria.isLookingForField(fieldKey, className, name);
-        if (lookingForClass || lookingForFieldKey) {
-            if (lookingForClass) {
-                classes.add(className);
-            }
-            if (lookingForFieldKey) {
-                fields.add(fieldKey);
+        IntSet providers = null;
+        for (int className : hierarchy.getClassAndAncestors(owner)) {
+            if (className != owner && !shouldAnalyze(className)) {
+                continue;
             }
+            // the desc of a field is not part of its key
+            int fieldKey = symbols.member(className, name, Symbols.NO_DESC);
 
-            String callerSignature = DeprecatedApi.getMethodKey(callerClassName, callerName, callerDesc);
-
-            // the first pass will be done with fieldKey, but then, they are going to regular recursive method search
-            providerToConsumers.computeIfAbsent(fieldKey, s -> new HashSet<>()).add(callerSignature);
-            consumerToProviders.computeIfAbsent(callerSignature, s -> new HashSet<>()).add(fieldKey);
-        }
+            boolean lookingForClass = searchCriteria.isLookingForClass(className);
+            boolean lookingForFieldKey = searchCriteria.isLookingForField(fieldKey);
+            if (lookingForClass || lookingForFieldKey) {
+                if (lookingForClass) {
+                    classes.add(className);
+                }
+                if (lookingForFieldKey) {
+                    fields.add(fieldKey);
+                }
 
-        final List<String> superClassAndInterfaces = superClassAndInterfacesByClass.get(className);
-        if (superClassAndInterfaces != null) {
-            for (final String superClassOrInterface : superClassAndInterfaces) {
-                fieldCalled(superClassOrInterface, name, desc, callerClassName, callerName, callerDesc);
+                // the first pass will be done with fieldKey, but then, they are going to regular recursive method search
+                if (providers == null) {
+                    providers = new IntSet();
+                }
+                providers.add(fieldKey);
             }
         }
+        return providers == null ? NO_PROVIDERS : providers.toArray();
     }
 
     public static boolean isJavaClass(String asmClassName) {
@@ -257,39 +1033,8 @@ public class DeprecatedUsage {
     }
 
     /**
-     * Discover the class hierarchy (SuperClass + Interfaces)
-     */
-    private class IndexerClassVisitor extends ClassVisitor {
-        IndexerClassVisitor() {
-            super(Opcodes.ASM9);
-        }
-
-        @Override
-        public void visit(int version, int access, String name, String signature, String superName,
-                String[] interfaces) {
-            // log(name + " extends " + superName + " {");
-            
-            final List<String> superClassAndInterfaces = new ArrayList<>();
-            // superClass may be null for java.lang.Object and module-info.class
-            // Object would have been filtered but we see lots of module-info classes
-            if (superName != null && !isJavaClass(superName)) {
-                superClassAndInterfaces.add(superName);
-            }
-            if (interfaces != null) {
-                for (final String anInterface : interfaces) {
-                    if (!isJavaClass(anInterface)) {
-                        superClassAndInterfaces.add(anInterface);
-                    }
-                }
-            }
-            if (!superClassAndInterfaces.isEmpty()) {
-                superClassAndInterfacesByClass.put(name, superClassAndInterfaces);
-            }
-        }
-    }
-
-    /**
-     * ClassVisitor that delegates method visit to CallersMethodVisitor
+     * ClassVisitor that discovers the class hierarchy (SuperClass + Interfaces)
+     * and delegates method visit to CallersMethodVisitor
      */
     private class CallersClassVisitor extends ClassVisitor {
         //TODO check if ThreadLocal is really required
@@ -303,6 +1048,7 @@ public class DeprecatedUsage {
         public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
             super.visit(version, access, name, signature, superName, interfaces);
             currentClassName = name;
+            recordHierarchy(name, superName, interfaces);
         }
 
         @Override
@@ -314,13 +1060,15 @@ public class DeprecatedUsage {
     }
 
     /**
-     * Visit every methods and fields
+     * Visit every methods and fields, recording the call sites
      */
     private class CallersMethodVisitor extends MethodVisitor {
         String className;
         String name;
         String desc;
         String signature;
+        // member id of this method, only interned if it calls something
+        int id = -1;
         
         CallersMethodVisitor(String className, String name, String desc, String signature) {
             super(Opcodes.ASM9);
@@ -330,16 +1078,23 @@ public class DeprecatedUsage {
             this.signature = signature;
         }
 
+        int getId() {
+            if (id == -1) {
+                id = symbols.method(className, name, desc);
+            }
+            return id;
+        }
+
         @Deprecated
         @Override
         public void visitMethodInsn(int opcode, String owner, String name, String desc) {
-            methodCalled(owner, name, desc, this.className, this.name, this.desc);
+            recordCallSite(false, owner, name, desc, this);
         }
 
         @Override
         public void visitMethodInsn(int opcode, String owner, String name, String desc,
                 boolean itf) {
-            methodCalled(owner, name, desc, this.className, this.name, this.desc);
+            recordCallSite(false, owner, name, desc, this);
         }
 
         @Override
@@ -347,14 +1102,13 @@ public class DeprecatedUsage {
                                            Object... bootstrapMethodArguments) {
             if (bootstrapMethodArguments.length > 1 && bootstrapMethodArguments[1] instanceof Handle) {
                 Handle methodArgument = (Handle) bootstrapMethodArguments[1];
-                methodCalled(methodArgument.getOwner(), methodArgument.getName(), methodArgument.getDesc(),
-                        this.className, this.name, this.desc);
+                recordCallSite(false, methodArgument.getOwner(), methodArgument.getName(), methodArgument.getDesc(), this);
             }
         }
 
         @Override
         public void visitFieldInsn(int opcode, String owner, String name, String desc) {
-            fieldCalled(owner, name, desc, this.className, this.name, this.desc);
+            recordCallSite(true, owner, name, desc, this);
         }
     }
 }
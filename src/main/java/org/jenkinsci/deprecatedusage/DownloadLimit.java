@@ -0,0 +1,100 @@
+package org.jenkinsci.deprecatedusage;
+
+/**
+ * Number of downloads allowed at a time. Either fixed, or adaptive: the limit then grows by one each time a limit's
+ * worth of downloads succeeded (additive increase) and is halved when the update center shows signs of overload, a
+ * 5xx response or a network error (multiplicative decrease), between 1 and the maximum.
+ * <p>
+ * The throughput of the successful downloads drives the increase: while each download still gets at least half of the
+ * best throughput seen, more downloads get more bandwidth and the limit grows. Below that, the downloads share a
+ * saturated link and the limit shrinks by the same step. Small files, whose time is mostly latency, only count as
+ * successes.
+ */
+final class DownloadLimit {
+    /**
+     * Size under which the throughput of a download is not significant
+     */
+    static final long MIN_SAMPLE_SIZE = 1 << 20;
+
+    private final int max;
+    private final boolean adaptive;
+    private double limit;
+    private int inFlight;
+    // the failures of the downloads started before the last decrease do not decrease the limit again
+    private long started;
+    private long startedBeforeDecrease;
+    // bytes per nanosecond
+    private double bestThroughput;
+
+    /**
+     * @param max      the limit when it is fixed, else the highest it can go
+     * @param adaptive true to adapt the limit to the failures, starting from a quarter of the maximum
+     */
+    DownloadLimit(int max, boolean adaptive) {
+        if (max < 1) {
+            throw new IllegalArgumentException("The number of concurrent downloads must be at least 1");
+        }
+        this.max = max;
+        this.adaptive = adaptive;
+        this.limit = adaptive ? Math.max(1, max / 4) : max;
+    }
+
+    /**
+     * @return the number identifying the started download, or -1 if the limit is reached
+     */
+    synchronized long tryAcquire() {
+        if (inFlight >= (int) limit) {
+            return -1;
+        }
+        inFlight++;
+        return started++;
+    }
+
+    /**
+     * Releases the permit of a download which finished, whatever its result
+     */
+    synchronized void release() {
+        inFlight--;
+    }
+
+    /**
+     * Called when a download succeeded
+     *
+     * @param size     the number of bytes downloaded
+     * @param duration the time the download took, in nanoseconds
+     */
+    synchronized void onSuccess(long size, long duration) {
+        if (!adaptive) {
+            return;
+        }
+        if (size >= MIN_SAMPLE_SIZE && duration > 0) {
+            double throughput = (double) size / duration;
+            bestThroughput = Math.max(bestThroughput, throughput);
+            if (throughput < bestThroughput / 2) {
+                limit = Math.max(1, limit - 1 / limit);
+                return;
+            }
+        }
+        limit = Math.min(max, limit + 1 / limit);
+    }
+
+    /**
+     * Called when a download failed because of the server or the network
+     *
+     * @param download the number returned by {@link #tryAcquire()} when the download started
+     */
+    synchronized void onOverload(long download) {
+        if (adaptive && download >= startedBeforeDecrease) {
+            limit = Math.max(1, limit / 2);
+            startedBeforeDecrease = started;
+        }
+    }
+
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    boolean isAdaptive() {
+        return adaptive;
+    }
+}
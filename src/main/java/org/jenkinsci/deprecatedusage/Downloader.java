@@ -2,86 +2,284 @@ package org.jenkinsci.deprecatedusage;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.UncheckedIOException;
-import java.net.HttpURLConnection;
 import java.net.SocketException;
-import java.net.URL;
-import java.net.URLConnection;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.DigestException;
+import java.time.Duration;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
+/**
+ * Downloads the cores and plugins with an asynchronous {@link HttpClient}: one request per file, on connections
+ * kept alive and multiplexed with HTTP/2 when the server supports it, the body being written to disk as received.
+ * No thread is held while waiting for the network.
+ */
 public class Downloader {
+    static final int DEFAULT_MAX_RETRIES = 2;
+    static final long DEFAULT_RETRY_DELAY_MILLIS = 7500L;
+    // the delay doubles with each retry, up to this bound
+    private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+    // only waits for the delays before the retries, which are then run by the executor
+    private static final String CANNOT_RESUME_MESSAGE = "Partial download cannot be resumed, restarting it";
+
+    private static final ScheduledExecutorService RETRY_SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "download-retry-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final ExecutorService executor;
-    private final Semaphore concurrentDownloadsPermit;
+    private final int maxConcurrentDownloads;
+    private final int maxRetries;
+    private final long retryDelayMillis;
+    private final DownloadLimit concurrentDownloads;
+    // downloads waiting for a permit, given the number of the download when started
+    private final Queue<LongConsumer> pendingDownloads = new ConcurrentLinkedQueue<>();
+    private final HttpClient httpClient;
+    private VerifiedDigests verifiedDigests;
 
     public Downloader(ExecutorService executor, int maxConcurrentDownloads) {
+        this(executor, maxConcurrentDownloads, false, DEFAULT_MAX_RETRIES, DEFAULT_RETRY_DELAY_MILLIS);
+    }
+
+    /**
+     * @param adaptiveConcurrency true to adapt the number of concurrent downloads to the failures of the server, up
+     *                            to maxConcurrentDownloads
+     * @param maxRetries          number of times a download failing on a network error is retried
+     * @param retryDelayMillis    delay before the first retry, the next ones wait exponentially longer
+     */
+    public Downloader(ExecutorService executor, int maxConcurrentDownloads, boolean adaptiveConcurrency, int maxRetries,
+                      long retryDelayMillis) {
+        if (maxRetries < 0 || retryDelayMillis < 0) {
+            throw new IllegalArgumentException("The number of retries and their delay must not be negative");
+        }
         this.executor = executor;
-        concurrentDownloadsPermit = new Semaphore(maxConcurrentDownloads);
+        this.maxConcurrentDownloads = maxConcurrentDownloads;
+        this.maxRetries = maxRetries;
+        this.retryDelayMillis = retryDelayMillis;
+        concurrentDownloads = new DownloadLimit(maxConcurrentDownloads, adaptiveConcurrency);
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(30))
+                .executor(executor)
+                .build();
+    }
+
+    /**
+     * Trusts the files already verified instead of reading them again, and records the ones verified now
+     */
+    public void setVerifiedDigests(VerifiedDigests verifiedDigests) {
+        this.verifiedDigests = verifiedDigests;
     }
 
     public Collection<JenkinsFile> useExistingFiles(Collection<JenkinsFile> files){
+        return checkExistingFiles(files).join();
+    }
+
+    /**
+     * Same as {@link #useExistingFiles(Collection)}, without waiting for the files to be checked
+     */
+    public CompletableFuture<Collection<JenkinsFile>> checkExistingFiles(Collection<JenkinsFile> files) {
         final Collection<JenkinsFile> synced = ConcurrentHashMap.newKeySet(files.size());
-        for (JenkinsFile file : files) {
-            if (file.isFileSynchronized()) {
-                synced.add(file);
-            }
-        }
-        return synced;
+        // the files which have to be hashed are hashed in parallel
+        return CompletableFuture.allOf(files.stream()
+                .map(file -> CompletableFuture.runAsync(() -> {
+                    if (isSynchronized(file)) {
+                        synced.add(file);
+                    }
+                }, executor))
+                .toArray(CompletableFuture<?>[]::new)).thenApply(ignored -> synced);
+    }
+
+    private boolean isSynchronized(JenkinsFile file) {
+        return verifiedDigests != null ? verifiedDigests.isSynchronized(file) : file.isFileSynchronized();
     }
     
-    public Future<Collection<JenkinsFile>> synchronize(Collection<JenkinsFile> files) {
+    public CompletableFuture<Collection<JenkinsFile>> synchronize(Collection<JenkinsFile> files) {
         final Collection<JenkinsFile> synced = ConcurrentHashMap.newKeySet(files.size());
-        final CountDownLatch latch = new CountDownLatch(files.size());
+        final AtomicInteger remaining = new AtomicInteger(files.size());
+        final CompletableFuture<Collection<JenkinsFile>> result = new CompletableFuture<>();
+        if (files.isEmpty()) {
+            result.complete(synced);
+        }
         for (JenkinsFile file : files) {
-            if (file.isFileSynchronized()) {
-                synced.add(file);
-                latch.countDown();
+            synchronize(file, success -> {
+                if (success) {
+                    synced.add(file);
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    result.complete(synced);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Same as {@link #synchronize(Collection)}, but each file can be read from the returned queue as soon as it is
+     * synchronized, so that it can be analyzed while the next ones are downloaded. When enough files are waiting to
+     * be read, the next downloads wait for them to be read.
+     *
+     * @param capacity maximum number of synchronized files waiting to be read, besides the ones being downloaded
+     */
+    public Iterable<JenkinsFile> stream(Collection<JenkinsFile> files, int capacity) {
+        // the files started and not read yet, being synchronized or waiting to be read
+        final Semaphore room = new Semaphore(capacity + maxConcurrentDownloads);
+        final SynchronizedFiles synced = new SynchronizedFiles(files.size(), room);
+        // the threads of the executor must never wait for the files to be read, as other downloads (the cores) may
+        // need them meanwhile: only this thread waits for room before starting the next file
+        Thread producer = new Thread(() -> {
+            for (JenkinsFile file : files) {
+                try {
+                    room.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                synchronize(file, success -> synced.add(success ? file : null));
+            }
+        }, "download-stream");
+        producer.setDaemon(true);
+        producer.start();
+        return synced;
+    }
+
+    /**
+     * Downloads the file if it is not already synchronized
+     *
+     * @param done called with true once the file is synchronized, or with false if it failed
+     */
+    private void synchronize(JenkinsFile file, Consumer<Boolean> done) {
+        // checked by the executor, so that the files to hash are hashed in parallel
+        CompletableFuture.supplyAsync(() -> isSynchronized(file), executor).whenComplete((synced, failure) -> {
+            if (failure == null && synced) {
+                done.accept(true);
             } else {
-                Path path = file.getFile().toPath();
-                Path parent = path.getParent();
-                if (Files.notExists(parent)) {
+                downloadAndReport(file, done);
+            }
+        });
+    }
+
+    private void downloadAndReport(JenkinsFile file, Consumer<Boolean> done) {
+        Path parent = file.getFile().toPath().getParent();
+        CompletableFuture<Void> download;
+        try {
+            Files.createDirectories(parent);
+            download = download(file);
+        } catch (IOException e) {
+            download = new CompletableFuture<>();
+            download.completeExceptionally(e);
+        }
+        download.handle((success, failure) -> {
+            if (failure != null) {
+                // do not throw away the message!
+                StringWriter sw = new StringWriter();
+                PrintWriter pw = new PrintWriter(sw);
+                pw.println("failure synching " + file.getName());
+                pw.println(failure.getMessage());
+                failure.printStackTrace(pw);
+                pw.flush();
+                System.err.println(sw.toString());
+            }
+            done.accept(failure == null);
+            return null;
+        });
+    }
+
+    /**
+     * Bounded queue of the synchronized files, which can only be iterated once. Each iteration waits for the next
+     * file, until all the files are synchronized or failed.
+     */
+    private static final class SynchronizedFiles implements Iterable<JenkinsFile> {
+        private final int count;
+        // empty for a file which failed
+        // bounded by the room given back when each file is read, so adding never waits
+        private final BlockingQueue<Optional<JenkinsFile>> queue = new LinkedBlockingQueue<>();
+        private final Semaphore room;
+
+        SynchronizedFiles(int count, Semaphore room) {
+            this.count = count;
+            this.room = room;
+        }
+
+        /**
+         * @param file the synchronized file, or null if it failed
+         */
+        void add(JenkinsFile file) {
+            queue.add(Optional.ofNullable(file));
+        }
+
+        @Override
+        public Iterator<JenkinsFile> iterator() {
+            return new Iterator<JenkinsFile>() {
+                private int taken;
+                private JenkinsFile next;
+
+                @Override
+                public boolean hasNext() {
                     try {
-                        Files.createDirectories(parent);
-                    } catch (IOException e) {
-                        throw new UncheckedIOException(e);
+                        while (next == null && taken < count) {
+                            next = queue.take().orElse(null);
+                            taken++;
+                            room.release();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while waiting for the downloads", e);
                     }
+                    return next != null;
                 }
-                download(file).handle((success, failure) -> {
-                    if (failure != null) {
-                        // do not throw away the message!
-                        StringWriter sw = new StringWriter();
-                        PrintWriter pw = new PrintWriter(sw);
-                        pw.println("failure synching " + file.getName());
-                        pw.println(failure.getMessage());
-                        failure.printStackTrace(pw);
-                        pw.flush();
-                        System.err.println(sw.toString());
-                    } else {
-                        synced.add(file);
+
+                @Override
+                public JenkinsFile next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
                     }
-                    latch.countDown();
-                    return null;
-                });
-            }
+                    JenkinsFile file = next;
+                    next = null;
+                    return file;
+                }
+            };
         }
-        return executor.submit(() -> {
-            latch.await();
-            return synced;
-        });
     }
 
     private CompletableFuture<Void> download(JenkinsFile file) {
@@ -90,8 +288,33 @@ public class Downloader {
         return retryable.result;
     }
 
+    /**
+     * Starts the download once a permit is available, without waiting for it
+     */
+    private void whenPermitted(LongConsumer download) {
+        pendingDownloads.add(download);
+        startPendingDownloads();
+    }
+
+    private void releasePermit() {
+        concurrentDownloads.release();
+        startPendingDownloads();
+    }
+
+    private void startPendingDownloads() {
+        long started;
+        while (!pendingDownloads.isEmpty() && (started = concurrentDownloads.tryAcquire()) >= 0) {
+            LongConsumer download = pendingDownloads.poll();
+            if (download == null) {
+                concurrentDownloads.release();
+                return;
+            }
+            download.accept(started);
+        }
+    }
+
     private class Retryable implements Runnable {
-        private final AtomicInteger retriesRemaining = new AtomicInteger(2);
+        private final AtomicInteger retries = new AtomicInteger();
         private final CompletableFuture<Void> result = new CompletableFuture<>();
         private final JenkinsFile file;
 
@@ -101,66 +324,158 @@ public class Downloader {
 
         @Override
         public void run() {
-            executor.execute(() -> {
+            whenPermitted(started -> {
+                long startTime = System.nanoTime();
+                CompletableFuture<Long> attempt;
                 try {
-                    concurrentDownloadsPermit.acquire();
-                    doRun();
-                    result.complete(null);
-                } catch (IOException | DigestException e) {
-                    result.completeExceptionally(e);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    result.completeExceptionally(e);
-                } finally {
-                    concurrentDownloadsPermit.release();
+                    attempt = doRun();
+                } catch (IOException | RuntimeException e) {
+                    attempt = new CompletableFuture<>();
+                    attempt.completeExceptionally(e);
                 }
+                attempt.whenComplete((fileSize, failure) -> {
+                    Throwable cause = failure == null ? null : unwrap(failure);
+                    if (failure == null) {
+                        concurrentDownloads.onSuccess(fileSize, System.nanoTime() - startTime);
+                    } else if (isOverload(cause)) {
+                        concurrentDownloads.onOverload(started);
+                    }
+                    // the permit is not kept while waiting for a retry
+                    releasePermit();
+                    if (failure == null) {
+                        onDownloaded(fileSize);
+                    } else {
+                        onFailure(cause);
+                    }
+                });
             });
         }
 
-        private void doRun() throws IOException, DigestException {
-            URL url = new URL(file.getUrl());
-            try {
-                URLConnection con = url.openConnection();
-                if (url.getProtocol().equalsIgnoreCase("https") || url.getProtocol().equalsIgnoreCase("http")) {
-                    HttpURLConnection request = (HttpURLConnection) url.openConnection();
-                    int responseCode = request.getResponseCode();
-                    if (responseCode == 502) {
-                        throw new IOException("Flaky Update Center returned HTTP 502");
-                    } else if (responseCode >= 400) {
-                        throw new HttpResponseException(responseCode, request.getResponseMessage());
+        /**
+         * Sends a single request, streaming the body to the partial file, or resuming it when a previous attempt
+         * left one
+         */
+        private CompletableFuture<Long> doRun() throws IOException {
+            URI uri = URI.create(file.getUrl());
+            if ("file".equalsIgnoreCase(uri.getScheme())) {
+                return CompletableFuture.supplyAsync(() -> {
+                    try (InputStream in = Files.newInputStream(Paths.get(uri)); OutputStream out = file.getPartOutputStream(false)) {
+                        return IOUtils.copyLarge(in, out);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
                     }
-                } else if (!url.getProtocol().equalsIgnoreCase("file")) {
-                    throw new IOException("Only http(s) and file URLs are supported");
+                }, executor);
+            } else if (!"https".equalsIgnoreCase(uri.getScheme()) && !"http".equalsIgnoreCase(uri.getScheme())) {
+                throw new IOException("Only http(s) and file URLs are supported");
+            }
+            Path partFile = file.getPartFile();
+            long resumeFrom = Files.exists(partFile) ? Files.size(partFile) : 0;
+            HttpRequest.Builder request = HttpRequest.newBuilder(uri).GET();
+            if (resumeFrom > 0) {
+                request.header("Range", "bytes=" + resumeFrom + "-");
+            }
+            return httpClient.sendAsync(request.build(), responseInfo -> {
+                int responseCode = responseInfo.statusCode();
+                if (responseCode == 502) {
+                    return failedBody(new IOException("Flaky Update Center returned HTTP 502"));
+                } else if (responseCode == 416
+                        || responseCode == 206 && !responseInfo.headers().firstValue("Content-Range").orElse("").startsWith("bytes " + resumeFrom + "-")) {
+                    try {
+                        Files.deleteIfExists(partFile);
+                    } catch (IOException e) {
+                        return failedBody(e);
+                    }
+                    return failedBody(new IOException(CANNOT_RESUME_MESSAGE));
+                } else if (responseCode >= 400) {
+                    return failedBody(new HttpResponseException(responseCode, "from " + uri));
                 }
-                long fileSize;
-                try (InputStream in = con.getInputStream();
-                     OutputStream out = file.getFileOutputStream()) {
-                    fileSize = IOUtils.copyLarge(in, out);
+                try {
+                    // a server ignoring the range sends the whole file
+                    return new FileBodySubscriber(file.getPartOutputStream(responseCode == 206));
+                } catch (IOException e) {
+                    return failedBody(e);
                 }
-                if (file.isFileMessageDigestValid()) {
-                    System.out.printf("Downloaded %s @ %.2f kiB%n", file.getUrl(), (fileSize / 1024.0));
-                } else {
-                    throw new DigestException("Downloaded file message digest does not match update center for " + url);
+            }).thenApply(HttpResponse::body);
+        }
+
+        private void onDownloaded(long fileSize) {
+            boolean valid;
+            try {
+                valid = file.isFileMessageDigestValid();
+            } catch (IOException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            if (valid) {
+                if (verifiedDigests != null) {
+                    verifiedDigests.verified(file);
                 }
-            } catch (IOException ioEx) {
-                if (shouldRetryForException(ioEx) && retriesRemaining.getAndDecrement() > 0) {
-                    try {
-                        System.out.printf("Failed to download %s due to %s, will retry in 750ms%n", StringUtils.isEmpty(ioEx.getMessage()) ? ioEx.getClass().getName() : ioEx.getMessage() , file.getUrl());
-                        Thread.sleep(7500L);
-                    } catch (InterruptedException ex) {
-                        IOException toThrow = new IOException("InterruptedException in sleep backoff", ex);
-                        toThrow.addSuppressed(ioEx);
-                        throw toThrow;
-                    }
-                    doRun();
+                if (concurrentDownloads.isAdaptive()) {
+                    System.out.printf("Downloaded %s @ %.2f kiB (%d concurrent downloads allowed)%n", file.getUrl(),
+                            (fileSize / 1024.0), concurrentDownloads.getLimit());
                 } else {
-                    throw ioEx;
+                    System.out.printf("Downloaded %s @ %.2f kiB%n", file.getUrl(), (fileSize / 1024.0));
                 }
+                result.complete(null);
+            } else {
+                result.completeExceptionally(new DigestException("Downloaded file message digest does not match update center for " + file.getUrl()));
+            }
+        }
+
+        private void onFailure(Throwable failure) {
+            int retry;
+            if (failure instanceof IOException && shouldRetryForException((IOException) failure)
+                    && (retry = retries.incrementAndGet()) <= maxRetries) {
+                long delay = retryDelay(retry);
+                System.out.printf("Failed to download %s due to %s, will retry in %dms%n", file.getUrl(),
+                        StringUtils.isEmpty(failure.getMessage()) ? failure.getClass().getName() : failure.getMessage(), delay);
+                // neither a thread nor a permit is held while waiting
+                RETRY_SCHEDULER.schedule(this::retry, delay, TimeUnit.MILLISECONDS);
+            } else {
+                result.completeExceptionally(failure);
+            }
+        }
+
+        private void retry() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // the executor was shut down meanwhile
+                result.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * Returns the delay before the given retry (starting at 1): exponentially longer for each retry, and random
+         * between its half and its whole so that the downloads failing together are not retried together
+         */
+        private long retryDelay(int retry) {
+            long delay = Math.min(MAX_RETRY_DELAY_MILLIS, retryDelayMillis << Math.min(retry - 1, 20));
+            return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        }
+
+        private Throwable unwrap(Throwable failure) {
+            if (failure instanceof CompletionException && failure.getCause() != null) {
+                return unwrap(failure.getCause());
+            }
+            if (failure instanceof UncheckedIOException) {
+                return failure.getCause();
+            }
+            return failure;
+        }
+
+        /**
+         * Returns true if the failure shows that the server or the network cannot keep up with the downloads
+         */
+        private boolean isOverload(Throwable failure) {
+            if (failure instanceof HttpResponseException) {
+                return ((HttpResponseException) failure).getStatusCode() >= 500;
             }
+            return failure instanceof IOException && shouldRetryForException((IOException) failure);
         }
 
         private boolean shouldRetryForException(IOException ioEx) {
-            if (ioEx instanceof SocketException) {
+            if (ioEx instanceof SocketException || ioEx instanceof EOFException || ioEx instanceof HttpTimeoutException) {
                 return true;
             }
             if ("Premature EOF".equals(ioEx.getMessage())) {
@@ -169,7 +484,93 @@ public class Downloader {
             if ("Flaky Update Center returned HTTP 502".equals(ioEx.getMessage())) {
                 return true;
             }
+            if (CANNOT_RESUME_MESSAGE.equals(ioEx.getMessage())) {
+                return true;
+            }
             return false;
         }
     }
+
+    /**
+     * Discards the body of a failed response, and fails with the given exception
+     */
+    private static HttpResponse.BodySubscriber<Long> failedBody(IOException failure) {
+        return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.discarding(), ignored -> {
+            throw new CompletionException(failure);
+        });
+    }
+
+    /**
+     * Writes the body to the file as it is received, one buffer list at a time. When the connection fails, the bytes
+     * received are kept, to be resumed by the next attempt.
+     */
+    private static final class FileBodySubscriber implements HttpResponse.BodySubscriber<Long> {
+        private final OutputStream out;
+        private final CompletableFuture<Long> size = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+        private long written;
+
+        FileBodySubscriber(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public CompletionStage<Long> getBody() {
+            return size;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            try {
+                for (ByteBuffer buffer : buffers) {
+                    int length = buffer.remaining();
+                    if (buffer.hasArray()) {
+                        out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+                    } else {
+                        byte[] bytes = new byte[length];
+                        buffer.get(bytes);
+                        out.write(bytes);
+                    }
+                    written += length;
+                }
+                subscription.request(1);
+            } catch (IOException e) {
+                subscription.cancel();
+                fail(e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            // the body was cut short by the network, whatever the exception reporting it
+            EOFException eof = new EOFException("Premature EOF after " + written + " bytes of the body");
+            eof.initCause(throwable);
+            fail(eof);
+        }
+
+        private void fail(Throwable throwable) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                throwable.addSuppressed(e);
+            }
+            size.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            try {
+                out.close();
+                size.complete(written);
+            } catch (IOException e) {
+                size.completeExceptionally(e);
+            }
+        }
+    }
 }
@@ -0,0 +1,146 @@
+package org.jenkinsci.deprecatedusage;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Set of non-negative ints, such as the ids of {@link Symbols}, without boxing them.
+ * Not thread-safe.
+ */
+public final class IntSet {
+    // open addressing, an empty slot is 0 so the values are stored plus one
+    private int[] table;
+    private int size;
+
+    public IntSet() {
+        this(8);
+    }
+
+    public IntSet(int expectedSize) {
+        this.table = new int[Integer.highestOneBit(Math.max(expectedSize, 4) * 2) * 2];
+    }
+
+    /**
+     * @return true if the value was not in the set
+     */
+    public boolean add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value " + value);
+        }
+        if (2 * (size + 1) > table.length) {
+            rehash(table.length * 2);
+        }
+        int stored = value + 1;
+        int mask = table.length - 1;
+        int index = mix(value) & mask;
+        while (table[index] != 0) {
+            if (table[index] == stored) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        table[index] = stored;
+        size++;
+        return true;
+    }
+
+    public void addAll(IntSet other) {
+        other.forEach(this::add);
+    }
+
+    public boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int stored = value + 1;
+        int mask = table.length - 1;
+        int index = mix(value) & mask;
+        while (table[index] != 0) {
+            if (table[index] == stored) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEach(IntConsumer action) {
+        for (int stored : table) {
+            if (stored != 0) {
+                action.accept(stored - 1);
+            }
+        }
+    }
+
+    public int[] toArray() {
+        int[] values = new int[size];
+        int i = 0;
+        for (int stored : table) {
+            if (stored != 0) {
+                values[i++] = stored - 1;
+            }
+        }
+        return values;
+    }
+
+    private void rehash(int capacity) {
+        int[] old = table;
+        table = new int[capacity];
+        int mask = capacity - 1;
+        for (int stored : old) {
+            if (stored != 0) {
+                int index = mix(stored - 1) & mask;
+                while (table[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                table[index] = stored;
+            }
+        }
+    }
+
+    private static int mix(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof IntSet)) {
+            return false;
+        }
+        IntSet that = (IntSet) o;
+        if (size != that.size) {
+            return false;
+        }
+        for (int stored : table) {
+            if (stored != 0 && !that.contains(stored - 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int stored : table) {
+            hash += stored;
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        int[] values = toArray();
+        Arrays.sort(values);
+        return Arrays.toString(values);
+    }
+}
@@ -1,20 +1,24 @@
 package org.jenkinsci.deprecatedusage;
 
-import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.codec.binary.Hex;
 
 import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
-import java.security.DigestOutputStream;
 import java.security.MessageDigest;
+import java.util.Locale;
 import java.util.Objects;
 
 public class JenkinsFile {
+    private static final long MAPPED_CHUNK_SIZE = 64 * 1024 * 1024;
+
     private final String name;
     private final String version;
     private final String url;
@@ -22,6 +26,8 @@ public class JenkinsFile {
     private Path file;
     private final MessageDigest messageDigest;
     private final byte[] expectedDigest;
+    // number of bytes of the partial file covered by the current state of the message digest
+    private long digestedLength = -1;
 
     public JenkinsFile(String name, String version, String url, String wiki, MessageDigest messageDigest, byte[] expectedDigest) {
         super();
@@ -55,6 +61,17 @@ public class JenkinsFile {
         return url;
     }
 
+    /**
+     * Returns a key identifying the content of the file from the digest published by the update center,
+     * or null if no digest is known.
+     */
+    public String getDigestKey() {
+        if (messageDigest == null) {
+            return null;
+        }
+        return messageDigest.getAlgorithm().replace("-", "").toLowerCase(Locale.ENGLISH) + '-' + Hex.encodeHexString(expectedDigest);
+    }
+
     public void setFile(File file) {
         this.file = file.toPath();
     }
@@ -70,25 +87,97 @@ public class JenkinsFile {
         if (messageDigest == null) {
             return true;
         }
-        try (InputStream in = Files.newInputStream(file)) {
+        try {
             messageDigest.reset();
-            return MessageDigest.isEqual(expectedDigest, DigestUtils.digest(messageDigest, in));
+            digest(file);
+            return MessageDigest.isEqual(expectedDigest, messageDigest.digest());
         } catch (IOException ignored) {
             return false;
         }
     }
 
-    public OutputStream getFileOutputStream() throws IOException {
-        OutputStream fileStream = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-        if (messageDigest != null) {
-            messageDigest.reset();
-            return new DigestOutputStream(fileStream, messageDigest);
+    // mapped rather than read through a buffer: the plugins are hashed in parallel, and the cores are large
+    private void digest(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAPPED_CHUNK_SIZE) {
+                messageDigest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPED_CHUNK_SIZE, size - position)));
+            }
         }
-        return fileStream;
     }
 
-    public boolean isFileMessageDigestValid() {
-        return messageDigest == null || MessageDigest.isEqual(expectedDigest, messageDigest.digest());
+    /**
+     * Returns the file in which the file is downloaded, kept when the download fails so that it can be resumed
+     */
+    public Path getPartFile() {
+        return file.resolveSibling(file.getFileName() + ".part");
+    }
+
+    /**
+     * Opens the {@link #getPartFile() partial file} to write the downloaded bytes to it, computing their digest
+     *
+     * @param append true to append to the bytes already downloaded, their digest then continues from them
+     */
+    public OutputStream getPartOutputStream(boolean append) throws IOException {
+        Path partFile = getPartFile();
+        if (!append) {
+            digestedLength = 0;
+            if (messageDigest != null) {
+                messageDigest.reset();
+            }
+            return new DigestingOutputStream(Files.newOutputStream(partFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING));
+        }
+        long length = Files.size(partFile);
+        if (digestedLength != length) {
+            // the digest of the previous attempt does not match the file, for example after a restart
+            digestedLength = length;
+            if (messageDigest != null) {
+                messageDigest.reset();
+                digest(partFile);
+            }
+        }
+        return new DigestingOutputStream(Files.newOutputStream(partFile, StandardOpenOption.APPEND));
+    }
+
+    /**
+     * Checks the digest of the downloaded bytes, then moves the partial file in place, or deletes it if the digest
+     * does not match
+     */
+    public boolean isFileMessageDigestValid() throws IOException {
+        digestedLength = -1;
+        if (messageDigest != null && !MessageDigest.isEqual(expectedDigest, messageDigest.digest())) {
+            Files.deleteIfExists(getPartFile());
+            return false;
+        }
+        Files.move(getPartFile(), file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * Digests the bytes once they are written, so that the digest always matches the partial file
+     */
+    private final class DigestingOutputStream extends FilterOutputStream {
+        DigestingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (messageDigest != null) {
+                messageDigest.update((byte) b);
+            }
+            digestedLength++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (messageDigest != null) {
+                messageDigest.update(b, off, len);
+            }
+            digestedLength += len;
+        }
     }
 
     @Override
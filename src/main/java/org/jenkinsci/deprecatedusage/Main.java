@@ -5,6 +5,7 @@ import org.apache.commons.io.IOUtils;
 import org.jenkinsci.deprecatedusage.report.DeprecatedUnusedApiReport;
 import org.jenkinsci.deprecatedusage.report.DeprecatedUsageByApiReport;
 import org.jenkinsci.deprecatedusage.report.DeprecatedUsageByPluginReport;
+import org.jenkinsci.deprecatedusage.report.DeprecatedUsageHistoryReport;
 import org.jenkinsci.deprecatedusage.report.LevelReportStorage;
 import org.jenkinsci.deprecatedusage.report.RecursiveUsageByPluginByLevelReport;
 import org.jenkinsci.deprecatedusage.report.RecursiveUsageByPluginFlatReducedReport;
@@ -25,32 +26,51 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.sql.Array;
 import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 import java.util.zip.ZipException;
 
 public class Main {
+    /**
+     * Maximum number of downloaded files waiting to be analyzed
+     */
+    private static final int PIPELINE_CAPACITY = 2 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Maximum total size of the files analyzed at a time, their classes being several times larger once inflated
+     */
+    private static final long MAX_IN_FLIGHT_BYTES = Runtime.getRuntime().maxMemory() / 8;
 
     public static void main(String[] args) throws Exception {
         new Main().doMain(args);
@@ -81,57 +101,62 @@ public class Main {
 
         options.buildCache();
 
-        final ExecutorService executor = Executors.newWorkStealingPool();
-        final Downloader downloader = new Downloader(executor, options.maxConcurrentDownloads);
+        final ExecutorService executor = Executors.newWorkStealingPool(options.analysisThreads);
+        // the downloads may wait for the analysis, so they must not use the threads of the analysis, and the
+        // analysis must not wait for threads blocked on I/O
+        final ExecutorService downloadExecutor = newIoExecutor(options);
+        final Downloader downloader = new Downloader(downloadExecutor, options.maxConcurrentDownloads,
+                options.adaptiveDownloads, options.downloadRetries, options.downloadRetryDelay);
+        final VerifiedDigests verifiedDigests = new VerifiedDigests(new File("work", "verified-digests.json"));
+        downloader.setVerifiedDigests(verifiedDigests);
         final long start = System.currentTimeMillis();
         try {
             final DeprecatedApi deprecatedApi = new DeprecatedApi();
             addClassesToAnalyze(deprecatedApi);
             List<String> updateCenterURLs = options.getUpdateCenterURLs();
-            CountDownLatch metadataLoaded = new CountDownLatch(updateCenterURLs.size());
-            Set<JenkinsFile> cores = new ConcurrentSkipListSet<>(Comparator.comparing(JenkinsFile::getFile));
+            // the run is a graph of stages, each one starting as soon as its inputs are ready: each core is downloaded
+            // and read as soon as its update center is known, while the plugins are downloaded as soon as all the
+            // update centers are known, and analyzed once all the cores are read
+            Map<JenkinsFile, CompletableFuture<DeprecatedApi.CoreApi>> coreStages = new ConcurrentHashMap<>();
+            Set<JenkinsFile> downloadedCores = new ConcurrentSkipListSet<>(Comparator.comparing(JenkinsFile::getFile));
             Set<JenkinsFile> plugins = new ConcurrentSkipListSet<>(Comparator.comparing(JenkinsFile::getFile));
+            List<CompletableFuture<Void>> metadataStages = new ArrayList<>();
             for (String updateCenterURL : updateCenterURLs) {
                 URL url = new URL(updateCenterURL);
-                executor.execute(() -> {
+                metadataStages.add(CompletableFuture.supplyAsync(() -> {
                     System.out.println("Using update center URL: " + updateCenterURL);
                     try {
                         String json = IOUtils.toString(url, StandardCharsets.UTF_8).replace("updateCenter.post(", "");
-                        UpdateCenter updateCenter = new UpdateCenter(new JSONObject(json));
-                        if (updateCenter.getCore() != null) {
-                            cores.add(updateCenter.getCore());
-                        }
-                        plugins.addAll(updateCenter.getPlugins().stream().filter(f -> Options.get().shouldScanPlugin(f.getName())).collect(Collectors.toSet()));
-                        metadataLoaded.countDown();
+                        return new UpdateCenter(new JSONObject(json));
                     } catch (IOException e) {
                         throw new UncheckedIOException(e);
                     }
-                });
+                }, downloadExecutor).orTimeout(options.metadataTimeout, TimeUnit.SECONDS).thenAccept(updateCenter -> {
+                    JenkinsFile core = updateCenter.getCore();
+                    if (core != null) {
+                        coreStages.computeIfAbsent(core, c -> downloadAndReadCore(c, downloader, downloadExecutor, executor, downloadedCores)
+                                .orTimeout(options.coreTimeout, TimeUnit.MINUTES));
+                    }
+                    plugins.addAll(updateCenter.getPlugins().stream().filter(f -> Options.get().shouldScanPlugin(f.getName())).collect(Collectors.toSet()));
+                }));
             }
-
-            // wait for async code to finish submitting
-            metadataLoaded.await(10, TimeUnit.SECONDS);
-
-            Collection<JenkinsFile> downloadedCores;
-            if (options.skipDownloads) {
-                System.out.println("Checking core files");
-                downloadedCores = downloader.useExistingFiles(cores);
-            } else {
-                System.out.println("Downloading core files");
-                downloadedCores = downloader.synchronize(cores).get();
+            try {
+                CompletableFuture.allOf(metadataStages.toArray(new CompletableFuture<?>[0])).join();
+            } catch (CompletionException e) {
+                // the results would be silently incomplete without the plugins of an update center
+                throw new IllegalStateException(e.getCause() instanceof TimeoutException
+                        ? "No update center metadata after " + options.metadataTimeout + " seconds, see --metadataTimeout"
+                        : "Failed to load the update center metadata", e.getCause());
             }
 
-            if (!options.onlyIncludeSpecified) {
-                for (JenkinsFile core : downloadedCores) {
-                    try {
-                        System.out.println("Analyzing deprecated APIs in " + core);
-                        deprecatedApi.analyze(core.getFile());
-                        System.out.println("Finished deprecated API analysis in " + core);
-                    } catch (IOException e) {
-                        System.out.println("Error analyzing deprecated APIs in " + core);
-                        System.out.println(e.toString());
-                    }
-                }
+            if (options.pluginVersionsFile != null) {
+                // the cores still come from the update centers
+                String json = new String(Files.readAllBytes(options.pluginVersionsFile.toPath()), StandardCharsets.UTF_8);
+                PluginVersions pluginVersions = new PluginVersions(new JSONObject(json), options.pluginVersionsCount);
+                plugins.clear();
+                plugins.addAll(pluginVersions.getPlugins().stream().filter(f -> Options.get().shouldScanPlugin(f.getName())).collect(Collectors.toSet()));
+                System.out.println("Using up to " + options.pluginVersionsCount + " versions of each plugin from " + options.pluginVersionsFile
+                        + ", " + plugins.size() + " files");
             }
 
             if (options.limitPluginsFile != null) {
@@ -143,28 +168,64 @@ public class Main {
                 System.out.println("By using a limited scope of plugins, the list of plugins went from " + previousSize + " to " + afterSize);
             }
 
-            Collection<JenkinsFile> downloadedPlugins;
+            // the plugins are downloaded while the cores are downloaded and analyzed, and then analyzed as soon as
+            // downloaded
+            Iterable<JenkinsFile> pluginFiles;
             if (options.skipDownloads) {
                 System.out.println("Checking plugin files (out of " + plugins.size() + " total)");
-                downloadedPlugins = downloader.useExistingFiles(plugins);
+                pluginFiles = downloader.useExistingFiles(plugins);
             } else {
                 System.out.println("Downloading plugin files (out of " + plugins.size() + " total)");
-                downloadedPlugins = downloader.synchronize(plugins).get();
+                pluginFiles = downloader.stream(plugins, PIPELINE_CAPACITY);
+            }
+            List<JenkinsFile> downloadedPlugins = new ArrayList<>();
+
+            // the cores are read in parallel, and added in order
+            List<JenkinsFile> sortedCores = new ArrayList<>(coreStages.keySet());
+            sortedCores.sort(Comparator.comparing(JenkinsFile::getFile));
+            for (JenkinsFile core : sortedCores) {
+                try {
+                    DeprecatedApi.CoreApi coreApi = coreStages.get(core).join();
+                    if (coreApi != null) {
+                        deprecatedApi.add(coreApi);
+                        System.out.println("Finished deprecated API analysis in " + core);
+                    }
+                } catch (CompletionException e) {
+                    Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+                    System.out.println("Error analyzing deprecated APIs in " + core);
+                    System.out.println(cause instanceof TimeoutException
+                            ? "Not downloaded and analyzed within " + options.coreTimeout + " minutes, see --coreTimeout" : cause.toString());
+                    downloadedCores.remove(core);
+                }
             }
 
             System.out.println("Analyzing usage in plugins");
+            ScanCache scanCache = options.scanCache ? new ScanCache() : null;
+            ClassHierarchy classHierarchy = deprecatedApi.getClassHierarchy();
             SearchCriteria deprecatedAndOptionCriteria = new OptionsBasedSearchCriteria().combineWith(new DeprecatedApiSearchCriteria(deprecatedApi));
             
+            ScanManifest scanManifest = null;
+            Map<String, DeprecatedUsage> previousUsages = Collections.emptyMap();
+            if (options.incremental) {
+                scanManifest = new ScanManifest(new File("output", "scan-manifest.json"), ScanManifest.fingerprint(deprecatedApi, options));
+                previousUsages = scanManifest.load(deprecatedAndOptionCriteria);
+            }
+
             List<DeprecatedUsage> deprecatedUsages;
             if (options.includeCore) {
-                List<DeprecatedUsage> fromCores = analyzeDeprecatedUsage(downloadedCores, deprecatedAndOptionCriteria, executor, options.includeCoreLibraries);
-                List<DeprecatedUsage> fromPlugins = analyzeDeprecatedUsage(downloadedPlugins, deprecatedAndOptionCriteria, executor, options.includePluginLibraries);
+                List<DeprecatedUsage> fromCores = reuseOrAnalyzeDeprecatedUsage(downloadedCores, previousUsages, deprecatedAndOptionCriteria, executor, options.includeCoreLibraries, scanCache, classHierarchy);
+                List<DeprecatedUsage> fromPlugins = reuseOrAnalyzeDeprecatedUsage(collect(pluginFiles, downloadedPlugins), previousUsages, deprecatedAndOptionCriteria, executor, options.includePluginLibraries, scanCache, classHierarchy);
 
                 List<DeprecatedUsage> all = new ArrayList<>(fromPlugins);
                 all.addAll(fromCores);
                 deprecatedUsages = all;
             } else {
-                deprecatedUsages = analyzeDeprecatedUsage(downloadedPlugins, deprecatedAndOptionCriteria, executor, options.includePluginLibraries);
+                deprecatedUsages = reuseOrAnalyzeDeprecatedUsage(collect(pluginFiles, downloadedPlugins), previousUsages, deprecatedAndOptionCriteria, executor, options.includePluginLibraries, scanCache, classHierarchy);
+            }
+
+            if (scanManifest != null) {
+                // results of removed or updated plugins are not carried over
+                scanManifest.write(deprecatedUsages);
             }
             
             System.out.println("Initial analysis done");
@@ -172,6 +233,9 @@ public class Main {
             reports.add(new DeprecatedUsageByPluginReport(deprecatedApi, deprecatedUsages, new File("output"), "usage-by-plugin"));
             reports.add(new DeprecatedUnusedApiReport(deprecatedApi, deprecatedUsages, new File("output"), "deprecated-and-unused"));
             reports.add(new DeprecatedUsageByApiReport(deprecatedApi, deprecatedUsages, new File("output"), "usage-by-api"));
+            if (options.pluginVersionsFile != null) {
+                reports.add(new DeprecatedUsageHistoryReport(deprecatedApi, deprecatedUsages, new File("output"), "usage-history"));
+            }
 
             for (Report report : reports) {
                 report.generateJsonReport();
@@ -186,14 +250,14 @@ public class Main {
                 loopForRecursiveSearch(deprecatedUsages, levelReportStorage, newMethodsFound -> {
                     RecursiveSearchCriteria recursiveSearchCriteria = new RecursiveSearchCriteria(newMethodsFound);
                     if (options.includeCore) {
-                        List<DeprecatedUsage> fromCores = analyzeDeprecatedUsage(downloadedCores, recursiveSearchCriteria, executor, options.includeCoreLibraries);
-                        List<DeprecatedUsage> fromPlugins = analyzeDeprecatedUsage(downloadedPlugins, recursiveSearchCriteria, executor, options.includePluginLibraries);
+                        List<DeprecatedUsage> fromCores = analyzeDeprecatedUsage(downloadedCores, recursiveSearchCriteria, executor, options.includeCoreLibraries, scanCache, classHierarchy);
+                        List<DeprecatedUsage> fromPlugins = analyzeDeprecatedUsage(downloadedPlugins, recursiveSearchCriteria, executor, options.includePluginLibraries, scanCache, classHierarchy);
 
                         List<DeprecatedUsage> all = new ArrayList<>(fromPlugins);
                         all.addAll(fromCores);
                         return all;
                     } else {
-                        return analyzeDeprecatedUsage(downloadedPlugins, recursiveSearchCriteria, executor, options.includePluginLibraries);
+                        return analyzeDeprecatedUsage(downloadedPlugins, recursiveSearchCriteria, executor, options.includePluginLibraries, scanCache, classHierarchy);
                     }
                 });
 
@@ -208,10 +272,17 @@ public class Main {
                 }
             }
 
+            if (scanCache != null) {
+                scanCache.storeClassFacts();
+            }
+            System.out.println(verifiedDigests.getTrustedCount() + " cores/plugins trusted from their previously verified digest");
+            verifiedDigests.write();
+
             System.out.println("duration : " + (System.currentTimeMillis() - start) + " ms at "
                     + DateFormat.getDateTimeInstance().format(new Date()));
         } finally {
             executor.shutdown();
+            downloadExecutor.shutdownNow();
         }
     }
 
@@ -276,15 +347,163 @@ public class Main {
         }
     }
 
-    private static List<DeprecatedUsage> analyzeDeprecatedUsage(Collection<JenkinsFile> plugins, SearchCriteria searchCriteria,
-                                                                Executor executor, boolean scanPluginLibs) {
+    /**
+     * Creates the executor loading the update centers, downloading the cores/plugins and checking their digests: a
+     * virtual thread per task if requested and supported by the JDK, else a fixed number of threads
+     */
+    static ExecutorService newIoExecutor(Options options) {
+        if (options.virtualThreads) {
+            try {
+                // looked up as the code is compiled for Java 11
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.out.println("Virtual threads not supported by Java " + System.getProperty("java.version")
+                        + ", using " + options.getIoThreads() + " I/O threads");
+            }
+        }
+        return Executors.newFixedThreadPool(options.getIoThreads());
+    }
+
+    /**
+     * Downloads the core, or checks the existing file, then reads its APIs unless only the specified APIs are searched
+     *
+     * @param downloadedCores the core is added to it once downloaded
+     * @return the APIs of the core, or null if it is not downloaded or its APIs are not read
+     */
+    private static CompletableFuture<DeprecatedApi.CoreApi> downloadAndReadCore(JenkinsFile core, Downloader downloader, Executor ioExecutor, Executor executor,
+                                                                                Set<JenkinsFile> downloadedCores) {
+        Options options = Options.get();
+        CompletableFuture<Collection<JenkinsFile>> synced;
+        if (options.skipDownloads) {
+            System.out.println("Checking core file " + core);
+            synced = downloader.checkExistingFiles(Collections.singleton(core));
+        } else {
+            System.out.println("Downloading core file " + core);
+            synced = downloader.synchronize(Collections.singleton(core));
+        }
+        return synced.thenCompose(files -> {
+            if (files.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            downloadedCores.add(core);
+            if (options.onlyIncludeSpecified) {
+                return CompletableFuture.completedFuture(null);
+            }
+            System.out.println("Analyzing deprecated APIs in " + core);
+            return DeprecatedApi.read(core.getFile(), ioExecutor, executor);
+        });
+    }
+
+    /**
+     * Reuses the previous results of the cores/plugins whose version did not change, and analyzes the others
+     */
+    private static List<DeprecatedUsage> reuseOrAnalyzeDeprecatedUsage(Iterable<JenkinsFile> plugins, Map<String, DeprecatedUsage> previousUsages,
+                                                                       SearchCriteria searchCriteria, Executor executor, boolean scanPluginLibs, ScanCache scanCache,
+                                                                       ClassHierarchy classHierarchy) {
+        if (previousUsages.isEmpty()) {
+            return analyzeDeprecatedUsage(plugins, searchCriteria, executor, scanPluginLibs, scanCache, classHierarchy);
+        }
+        List<DeprecatedUsage> deprecatedUsages = new ArrayList<>();
+        Map<DeprecatedUsage, JenkinsFile> reusedFiles = new HashMap<>();
+        Predicate<JenkinsFile> notAnalyzedYet = plugin -> {
+            DeprecatedUsage previousUsage = previousUsages.get(plugin.getName() + ':' + plugin.getVersion());
+            if (previousUsage != null) {
+                deprecatedUsages.add(previousUsage);
+                reusedFiles.put(previousUsage, plugin);
+                return false;
+            }
+            return true;
+        };
+        // filtered while iterating when the files may still be downloading
+        Iterable<JenkinsFile> toAnalyze = plugins instanceof Collection
+                ? ((Collection<JenkinsFile>) plugins).stream().filter(notAnalyzedYet).collect(Collectors.toList())
+                : () -> StreamSupport.stream(plugins.spliterator(), false).filter(notAnalyzedYet).iterator();
+        List<DeprecatedUsage> analyzed = analyzeDeprecatedUsageOfEach(toAnalyze, searchCriteria, executor, scanPluginLibs, scanCache, classHierarchy);
+
+        // the previous results of a plugin calling members through classes of other plugins are outdated when these
+        // classes now have other ancestors, after other plugins were added, updated or removed
+        List<DeprecatedUsage> all = new ArrayList<>(deprecatedUsages);
+        all.addAll(analyzed);
+        ClassHierarchy allClasses = withClassesOfAllPlugins(classHierarchy, all);
+        List<JenkinsFile> outdated = new ArrayList<>();
+        deprecatedUsages.removeIf(previousUsage -> {
+            if (previousUsage.isResolvedSameWay(allClasses)) {
+                return false;
+            }
+            outdated.add(reusedFiles.get(previousUsage));
+            return true;
+        });
+        System.out.println("Reused previous results for " + deprecatedUsages.size() + " files, analyzed " + analyzed.size()
+                + " added or updated files and " + outdated.size() + " files calling through their classes");
+        // the classes they define did not change, nor the hierarchy
+        analyzed.addAll(analyzeDeprecatedUsageOfEach(outdated, searchCriteria, executor, scanPluginLibs, scanCache, classHierarchy));
+        deprecatedUsages.addAll(analyzed);
+        resolvePendingCalls(deprecatedUsages, allClasses, executor);
+        return deprecatedUsages;
+    }
+
+    /**
+     * Returns the given files, adding them to the collection as they are iterated
+     */
+    private static Iterable<JenkinsFile> collect(Iterable<JenkinsFile> files, Collection<JenkinsFile> collection) {
+        if (files instanceof Collection) {
+            // already downloaded
+            collection.addAll((Collection<JenkinsFile>) files);
+            return files;
+        }
+        return () -> StreamSupport.stream(files.spliterator(), false).peek(collection::add).iterator();
+    }
+
+    /**
+     * @param plugins the files to analyze, each one is analyzed as soon as iterated, and all of them from the largest
+     *                to the smallest one when they are already downloaded (a collection)
+     */
+    private static List<DeprecatedUsage> analyzeDeprecatedUsage(Iterable<JenkinsFile> plugins, SearchCriteria searchCriteria,
+                                                                Executor executor, boolean scanPluginLibs, ScanCache scanCache,
+                                                                ClassHierarchy classHierarchy) {
+        List<DeprecatedUsage> deprecatedUsages = analyzeDeprecatedUsageOfEach(plugins, searchCriteria, executor, scanPluginLibs, scanCache, classHierarchy);
+        resolvePendingCalls(deprecatedUsages, withClassesOfAllPlugins(classHierarchy, deprecatedUsages), executor);
+        return deprecatedUsages;
+    }
+
+    /**
+     * Same as {@link #analyzeDeprecatedUsage}, without resolving the calls through classes of other plugins
+     */
+    private static List<DeprecatedUsage> analyzeDeprecatedUsageOfEach(Iterable<JenkinsFile> plugins, SearchCriteria searchCriteria,
+                                                                      Executor executor, boolean scanPluginLibs, ScanCache scanCache,
+                                                                      ClassHierarchy classHierarchy) {
         List<CompletableFuture<DeprecatedUsage>> futures = new ArrayList<>();
+        // the same library jars are bundled by many plugins
+        SharedLibraries sharedLibraries = scanPluginLibs ? new SharedLibraries() : null;
+        // and the same classes are copied or shaded into many jars, the ones read without criteria are kept across runs
+        // as well as into the successive versions of a plugin
+        ClassFactsStore classFactsStore = scanCache != null ? scanCache.getClassFactsStore()
+                : scanPluginLibs || Options.get().pluginVersionsFile != null ? new ClassFactsStore() : null;
+        // the versions of a plugin are analyzed one after the other, so that the classes unchanged since the
+        // previous version are not visited again
+        Map<String, CompletableFuture<DeprecatedUsage>> previousVersions = new HashMap<>();
+        // bounds the files waiting for their analysis, so that the downloads wait for the analysis when it is slower
+        Semaphore analysisSlots = plugins instanceof Collection ? null : new Semaphore(PIPELINE_CAPACITY);
+        AnalysisScheduler scheduler = new AnalysisScheduler(executor, Options.get().analysisThreads, MAX_IN_FLIGHT_BYTES);
         for (JenkinsFile plugin : plugins) {
-            futures.add(CompletableFuture.supplyAsync(() -> {
-                DeprecatedUsage deprecatedUsage = new DeprecatedUsage(plugin.getName(), plugin.getVersion(), searchCriteria, scanPluginLibs);
+            Supplier<DeprecatedUsage> analysis = () -> {
+                DeprecatedUsage deprecatedUsage = new DeprecatedUsage(plugin.getName(), plugin.getVersion(), searchCriteria, scanPluginLibs, classHierarchy);
+                // only the recursive search needs to know the callers
+                deprecatedUsage.setRecordCallers(Options.get().recursive);
+                deprecatedUsage.setSharedLibraries(sharedLibraries);
+                deprecatedUsage.setClassFactsStore(classFactsStore);
+                deprecatedUsage.setParallelLibraries(true);
+                deprecatedUsage.setAnalysisScheduler(scheduler);
+                // written with the results
+                deprecatedUsage.setKeepHierarchy(Options.get().incremental);
                 try {
-                    deprecatedUsage.analyze(plugin.getFile());
+                    if (scanCache != null) {
+                        deprecatedUsage.analyze(plugin, scanCache);
+                    } else {
+                        deprecatedUsage.analyze(plugin.getFile());
+                    }
                 } catch (final EOFException | ZipException | FileNotFoundException e) {
+                    deprecatedUsage.setAnalysisFailed();
                     System.out.println("deleting " + plugin + " and skipping, because " + e.toString());
                     try {
                         plugin.deleteFile();
@@ -292,11 +511,25 @@ public class Main {
                         ioException.printStackTrace();
                     }
                 } catch (final Exception e) {
+                    deprecatedUsage.setAnalysisFailed();
                     System.out.println(e.toString() + " on " + plugin.getFile().getName());
                     e.printStackTrace();
                 }
                 return deprecatedUsage;
-            }, executor));
+            };
+            long size = plugin.getFile().length();
+            CompletableFuture<DeprecatedUsage> previousVersion = classFactsStore != null ? previousVersions.get(plugin.getName()) : null;
+            if (analysisSlots != null) {
+                analysisSlots.acquireUninterruptibly();
+            }
+            CompletableFuture<DeprecatedUsage> future = previousVersion != null
+                    ? previousVersion.thenCompose(ignored -> scheduler.submit(size, analysis))
+                    : scheduler.submit(size, analysis);
+            if (analysisSlots != null) {
+                future.whenComplete((usage, failure) -> analysisSlots.release());
+            }
+            previousVersions.put(plugin.getName(), future);
+            futures.add(future);
         }
 
         final List<DeprecatedUsage> deprecatedUsages = new ArrayList<>();
@@ -320,7 +553,47 @@ public class Main {
                 System.out.print("\n");
             }
         }
+        if (sharedLibraries != null) {
+            System.out.println();
+            System.out.println("Read " + sharedLibraries.getReadCount() + " distinct library jars, reused "
+                    + sharedLibraries.getReusedCount() + " times");
+        }
+        if (classFactsStore != null && classFactsStore.getHitCount() > 0) {
+            System.out.println("Reused the facts of " + classFactsStore.getHitCount() + " class files");
+        }
         return deprecatedUsages;
     }
 
+    /**
+     * Returns the hierarchy of the cores with the classes of all the plugins. A class defined by several plugins is
+     * taken from the first plugin by name and version, whatever the order in which they were analyzed, so that the
+     * results do not depend on this order.
+     */
+    private static ClassHierarchy withClassesOfAllPlugins(ClassHierarchy classHierarchy, List<DeprecatedUsage> deprecatedUsages) {
+        return classHierarchy.with(deprecatedUsages.stream()
+                .sorted(Comparator.comparing(DeprecatedUsage::getPlugin))
+                .map(DeprecatedUsage::getDefinedClasses)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Resolves the calls through classes of other plugins, once the classes of all plugins are known
+     *
+     * @param allClasses the hierarchy of the cores with the classes of all plugins
+     */
+    private static void resolvePendingCalls(List<DeprecatedUsage> deprecatedUsages, ClassHierarchy allClasses, Executor executor) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (DeprecatedUsage deprecatedUsage : deprecatedUsages) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    deprecatedUsage.resolvePendingCalls(allClasses);
+                } catch (final Exception e) {
+                    deprecatedUsage.setAnalysisFailed();
+                    System.out.println(e.toString() + " on " + deprecatedUsage.getPlugin());
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    }
+
 }
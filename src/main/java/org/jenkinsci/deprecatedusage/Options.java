@@ -74,6 +74,30 @@ public class Options {
     @Option(name = "-D", aliases = "--downloadConcurrent", metaVar = "COUNT", usage = "Specifies number of concurrent downloads to allow")
     public int maxConcurrentDownloads = Runtime.getRuntime().availableProcessors() * 4;
 
+    @Option(name = "--adaptiveDownloads", usage = "Adapt the number of concurrent downloads to the update center: it grows while the downloads succeed without losing throughput, shrinks when their throughput drops, and is halved on server or network errors, up to the number given by -D.")
+    public boolean adaptiveDownloads;
+
+    @Option(name = "--downloadRetries", metaVar = "COUNT", usage = "Number of times a download failing on a network error is retried, default to 2.")
+    public int downloadRetries = Downloader.DEFAULT_MAX_RETRIES;
+
+    @Option(name = "--downloadRetryDelay", metaVar = "MILLISECONDS", usage = "Delay before retrying a failed download, default to 7500. It doubles with each retry of the same download, and is randomized to spread the retries.")
+    public long downloadRetryDelay = Downloader.DEFAULT_RETRY_DELAY_MILLIS;
+
+    @Option(name = "--metadataTimeout", metaVar = "SECONDS", usage = "Maximum time to load the metadata of each update center, default to 60. The run fails if one of them cannot be loaded.")
+    public long metadataTimeout = 60;
+
+    @Option(name = "--coreTimeout", metaVar = "MINUTES", usage = "Maximum time to download each core and read its APIs, default to 30. A core taking longer is left out of the run.")
+    public long coreTimeout = 30;
+
+    @Option(name = "--analysisThreads", metaVar = "COUNT", usage = "Number of threads reading the bytecode of the cores/plugins, default to the number of processors.")
+    public int analysisThreads = Runtime.getRuntime().availableProcessors();
+
+    @Option(name = "--ioThreads", metaVar = "COUNT", usage = "Number of threads loading the update centers, downloading the cores/plugins and checking their digests, default to the number of concurrent downloads + 1.")
+    public int ioThreads;
+
+    @Option(name = "--virtualThreads", usage = "Load the update centers, download the cores/plugins and check their digests on virtual threads instead of the threads given by --ioThreads, if supported by the JDK (Java 21 and later).")
+    public boolean virtualThreads;
+
     @Option(name = "-r", aliases = "--recursive", usage = "Recursively check for method signatures (does not work for class/field at the moment)")
     public boolean recursive;
     
@@ -83,6 +107,18 @@ public class Options {
     @Option(name = "-s", aliases = "--skipDownloads", usage = "Disable the download of the core/plugins and use the local version. Useful during development to debug more efficiently.")
     public boolean skipDownloads;
 
+    @Option(name = "--scanCache", usage = "Cache what is read from each core/plugin in work/scan-cache, so that the next runs on the same files only evaluate the search criteria, without reading the bytecode again.")
+    public boolean scanCache;
+
+    @Option(name = "--incremental", usage = "Only analyze the cores/plugins added or updated since the previous incremental run, reusing the previous results (stored in output/scan-manifest.json) for the others.")
+    public boolean incremental;
+
+    @Option(name = "--pluginVersions", metaVar = "FILENAME", usage = "Scan the last versions of each plugin listed in this file (a copy of the plugin-versions.json of the update site) instead of the versions of the update center, to know when each plugin stopped using a deprecated API.")
+    public File pluginVersionsFile;
+
+    @Option(name = "--pluginVersionsCount", metaVar = "COUNT", usage = "Number of versions of each plugin to scan with --pluginVersions, default to 10.")
+    public int pluginVersionsCount = 10;
+
     @Option(name = "-v", aliases = "--verbose", usage = "Add verbose logging about downloads")
     public boolean verbose;
 
@@ -97,6 +133,10 @@ public class Options {
         return Arrays.stream(urls).map(String::trim).collect(Collectors.toList());
     }
 
+    public int getIoThreads() {
+        return ioThreads > 0 ? ioThreads : maxConcurrentDownloads + 1;
+    }
+
     public boolean shouldScanPlugin(String pluginId) {
         if (plugins == null) {
             return true;
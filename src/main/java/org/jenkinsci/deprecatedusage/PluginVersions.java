@@ -0,0 +1,88 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Versions of each plugin, as listed by the plugin-versions.json of the update site:
+ * {@code {"plugins": {"<id>": {"<version>": {"name": ..., "version": ..., "url": ..., "sha256": ...}}}}}.
+ * Only the last versions of each plugin are kept.
+ */
+public class PluginVersions {
+    /**
+     * Orders versions such as 1.9, 1.10, 1.10.1, 2.0-beta-1 or 2.0 by comparing their numbers numerically
+     */
+    public static final Comparator<String> VERSION_ORDER = PluginVersions::compareVersions;
+
+    private final List<JenkinsFile> plugins = new ArrayList<>();
+
+    /**
+     * @param lastVersionsCount maximum number of versions kept for each plugin
+     */
+    public PluginVersions(JSONObject metadata, int lastVersionsCount) {
+        JSONObject jsonPlugins = metadata.getJSONObject("plugins");
+        for (Object pluginId : jsonPlugins.keySet()) {
+            JSONObject jsonVersions = jsonPlugins.getJSONObject(pluginId.toString());
+            List<String> versions = new ArrayList<>();
+            for (Object version : jsonVersions.keySet()) {
+                versions.add(version.toString());
+            }
+            versions.sort(VERSION_ORDER);
+            for (String version : versions.subList(Math.max(0, versions.size() - lastVersionsCount), versions.size())) {
+                plugins.add(UpdateCenter.parse(jsonVersions.getJSONObject(version)));
+            }
+        }
+    }
+
+    /**
+     * Returns the kept versions of all the plugins, from the oldest to the newest for each plugin
+     */
+    public List<JenkinsFile> getPlugins() {
+        return plugins;
+    }
+
+    private static int compareVersions(String version1, String version2) {
+        String[] parts1 = version1.split("[.\\-]");
+        String[] parts2 = version2.split("[.\\-]");
+        for (int i = 0; i < Math.min(parts1.length, parts2.length); i++) {
+            String part1 = parts1[i];
+            String part2 = parts2[i];
+            boolean numeric1 = isNumber(part1);
+            boolean numeric2 = isNumber(part2);
+            int cmp;
+            if (numeric1 && numeric2) {
+                cmp = Long.compare(Long.parseLong(part1), Long.parseLong(part2));
+            } else if (numeric1 != numeric2) {
+                // 2.0.1 is after 2.0-beta
+                cmp = numeric1 ? 1 : -1;
+            } else {
+                cmp = part1.compareToIgnoreCase(part2);
+            }
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        if (parts1.length == parts2.length) {
+            return version1.compareTo(version2);
+        }
+        // 2.0 is after 2.0-beta-1 but before 2.0.1
+        String[] longer = parts1.length > parts2.length ? parts1 : parts2;
+        int sign = parts1.length > parts2.length ? 1 : -1;
+        return isNumber(longer[Math.min(parts1.length, parts2.length)]) ? sign : -sign;
+    }
+
+    private static boolean isNumber(String s) {
+        if (s.isEmpty() || s.length() > 18) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isDigit(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
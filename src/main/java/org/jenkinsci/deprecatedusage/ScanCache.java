@@ -0,0 +1,130 @@
+package org.jenkinsci.deprecatedusage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * On-disk cache of the {@link ScanFacts} of each artifact, keyed by the digest published by the update center.
+ * Given the facts do not depend on the search criteria, a run with other criteria can reuse them without reading
+ * any bytecode.
+ */
+public class ScanCache {
+    private final Path directory;
+    private ClassFactsStore classFactsStore;
+
+    public ScanCache() {
+        this(Paths.get("work", "scan-cache").toAbsolutePath());
+    }
+
+    public ScanCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param withCallers if false, facts read with the callers can also be returned
+     * @return the cached facts of the file, or null if not in the cache
+     */
+    public ScanFacts load(JenkinsFile file, boolean includeLibraries, boolean withCallers) {
+        Path path = getPath(file, includeLibraries, withCallers);
+        if (!withCallers && path != null && Files.notExists(path)) {
+            path = getPath(file, includeLibraries, true);
+        }
+        if (path == null || Files.notExists(path)) {
+            return null;
+        }
+        try (InputStream in = Files.newInputStream(path);
+             DataInputStream data = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)))) {
+            return ScanFacts.read(data);
+        } catch (IOException e) {
+            System.out.println("Ignoring unreadable cached scan " + path + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * @param withCallers true if the facts were read with the callers of each call site
+     */
+    public void store(JenkinsFile file, boolean includeLibraries, boolean withCallers, ScanFacts facts) {
+        Path path = getPath(file, includeLibraries, withCallers);
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            // written aside then moved, so that concurrent or interrupted runs never see a partial file
+            Path tmp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp);
+                 DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(out)))) {
+                facts.write(data);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Failed to cache scan of " + file + ": " + e);
+        }
+    }
+
+    /**
+     * Returns the facts of the class files visited by the previous runs, read on first call
+     */
+    public synchronized ClassFactsStore getClassFactsStore() {
+        if (classFactsStore == null) {
+            Path path = getClassFactsPath();
+            if (Files.exists(path)) {
+                try (InputStream in = Files.newInputStream(path);
+                     DataInputStream data = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)))) {
+                    classFactsStore = ClassFactsStore.read(data);
+                } catch (IOException e) {
+                    System.out.println("Ignoring unreadable cached class facts " + path + ": " + e);
+                }
+            }
+            if (classFactsStore == null) {
+                classFactsStore = new ClassFactsStore();
+            }
+        }
+        return classFactsStore;
+    }
+
+    /**
+     * Writes the facts of the class files visited, if {@link #getClassFactsStore()} was called
+     */
+    public synchronized void storeClassFacts() {
+        if (classFactsStore == null) {
+            return;
+        }
+        Path path = getClassFactsPath();
+        try {
+            Files.createDirectories(directory);
+            Path tmp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp);
+                 DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(out)))) {
+                classFactsStore.write(data);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Failed to cache class facts: " + e);
+        }
+    }
+
+    private Path getClassFactsPath() {
+        return directory.resolve("classes-v" + ScanFacts.FORMAT_VERSION + ".facts.gz");
+    }
+
+    private Path getPath(JenkinsFile file, boolean includeLibraries, boolean withCallers) {
+        String digestKey = file.getDigestKey();
+        if (digestKey == null) {
+            return null;
+        }
+        return directory.resolve(digestKey + (includeLibraries ? "-libs" : "") + (withCallers ? "" : "-refs") + "-v" + ScanFacts.FORMAT_VERSION + ".facts.gz");
+    }
+}
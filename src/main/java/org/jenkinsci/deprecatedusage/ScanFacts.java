@@ -0,0 +1,239 @@
+package org.jenkinsci.deprecatedusage;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Raw facts read from the classes of a plugin or a core: the class names referenced in the constant pools,
+ * the class hierarchy and the call sites found in method bodies.
+ * They do not depend on any search criteria, unless they were collected with a criteria to filter them.
+ */
+public class ScanFacts {
+    /**
+     * To be incremented each time the scan collects different facts, so that the cached facts are invalidated
+     */
+    static final int FORMAT_VERSION = 3;
+
+    /**
+     * Caller of the call sites read from the constant pools, without visiting the method bodies
+     */
+    static final int NO_CALLER = -1;
+
+    private final Set<String> referencedClasses = new LinkedHashSet<>();
+    // ids of Symbols
+    private final Map<Integer, int[]> superClassAndInterfacesByClass = new LinkedHashMap<>();
+    private final Set<CallSite> callSites = new LinkedHashSet<>();
+
+    public Set<String> getReferencedClasses() {
+        return referencedClasses;
+    }
+
+    public Map<Integer, int[]> getSuperClassAndInterfacesByClass() {
+        return superClassAndInterfacesByClass;
+    }
+
+    public Set<CallSite> getCallSites() {
+        return callSites;
+    }
+
+    void addReferencedClass(String className) {
+        referencedClasses.add(className);
+    }
+
+    void addSuperClassAndInterfaces(int className, int[] superClassAndInterfaces) {
+        superClassAndInterfacesByClass.put(className, superClassAndInterfaces);
+    }
+
+    void addCallSite(CallSite callSite) {
+        callSites.add(callSite);
+    }
+
+    /**
+     * Adds the facts of some other classes, such as a library jar bundled by the plugin
+     */
+    void addAll(ScanFacts facts) {
+        referencedClasses.addAll(facts.referencedClasses);
+        superClassAndInterfacesByClass.putAll(facts.superClassAndInterfacesByClass);
+        callSites.addAll(facts.callSites);
+    }
+
+    /**
+     * Returns true if the given constant pool string could be the internal name of a class (JVMS 4.2.1)
+     */
+    static boolean isPossibleClassName(String s) {
+        if (s.isEmpty() || s.charAt(0) == '/' || s.charAt(s.length() - 1) == '/') {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '.' || c == ';' || c == '[') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        // strings are written once in a table, then referenced by index
+        Symbols symbols = Symbols.get();
+        Map<String, Integer> indexes = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        referencedClasses.forEach(s -> index(s, indexes, strings));
+        superClassAndInterfacesByClass.forEach((className, supers) -> {
+            index(symbols.symbol(className), indexes, strings);
+            for (int s : supers) {
+                index(symbols.symbol(s), indexes, strings);
+            }
+        });
+        for (CallSite callSite : callSites) {
+            index(symbols.symbol(callSite.className), indexes, strings);
+            index(symbols.symbol(callSite.name), indexes, strings);
+            index(symbols.symbol(callSite.desc), indexes, strings);
+            if (callSite.caller != NO_CALLER) {
+                index(symbols.symbol(symbols.owner(callSite.caller)), indexes, strings);
+                index(symbols.symbol(symbols.name(callSite.caller)), indexes, strings);
+                index(symbols.symbol(symbols.desc(callSite.caller)), indexes, strings);
+            }
+        }
+
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(strings.size());
+        for (String s : strings) {
+            out.writeUTF(s);
+        }
+        out.writeInt(referencedClasses.size());
+        for (String s : referencedClasses) {
+            out.writeInt(indexes.get(s));
+        }
+        out.writeInt(superClassAndInterfacesByClass.size());
+        for (Map.Entry<Integer, int[]> entry : superClassAndInterfacesByClass.entrySet()) {
+            out.writeInt(indexes.get(symbols.symbol(entry.getKey())));
+            out.writeInt(entry.getValue().length);
+            for (int s : entry.getValue()) {
+                out.writeInt(indexes.get(symbols.symbol(s)));
+            }
+        }
+        out.writeInt(callSites.size());
+        for (CallSite callSite : callSites) {
+            out.writeBoolean(callSite.field);
+            out.writeInt(indexes.get(symbols.symbol(callSite.className)));
+            out.writeInt(indexes.get(symbols.symbol(callSite.name)));
+            out.writeInt(indexes.get(symbols.symbol(callSite.desc)));
+            if (callSite.caller == NO_CALLER) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(indexes.get(symbols.symbol(symbols.owner(callSite.caller))));
+                out.writeInt(indexes.get(symbols.symbol(symbols.name(callSite.caller))));
+                out.writeInt(indexes.get(symbols.symbol(symbols.desc(callSite.caller))));
+            }
+        }
+    }
+
+    /**
+     * @return the facts, or null if they were written by another version of the scanner
+     */
+    public static ScanFacts read(DataInputStream in) throws IOException {
+        if (in.readInt() != FORMAT_VERSION) {
+            return null;
+        }
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readUTF();
+        }
+        // the strings of the class names and members are interned on demand, the others are not kept
+        Symbols symbols = Symbols.get();
+        int[] ids = new int[strings.length];
+        Arrays.fill(ids, -1);
+        ScanFacts facts = new ScanFacts();
+        int classCount = in.readInt();
+        for (int i = 0; i < classCount; i++) {
+            facts.referencedClasses.add(strings[in.readInt()]);
+        }
+        int hierarchyCount = in.readInt();
+        for (int i = 0; i < hierarchyCount; i++) {
+            int className = id(in.readInt(), strings, ids, symbols);
+            int[] supers = new int[in.readInt()];
+            for (int j = 0; j < supers.length; j++) {
+                supers[j] = id(in.readInt(), strings, ids, symbols);
+            }
+            facts.superClassAndInterfacesByClass.put(className, supers);
+        }
+        int callSiteCount = in.readInt();
+        for (int i = 0; i < callSiteCount; i++) {
+            boolean field = in.readBoolean();
+            int className = id(in.readInt(), strings, ids, symbols);
+            int name = id(in.readInt(), strings, ids, symbols);
+            int desc = id(in.readInt(), strings, ids, symbols);
+            int callerClassName = in.readInt();
+            int caller = callerClassName == -1 ? NO_CALLER : symbols.member(id(callerClassName, strings, ids, symbols),
+                    id(in.readInt(), strings, ids, symbols), id(in.readInt(), strings, ids, symbols));
+            facts.callSites.add(new CallSite(field, className, name, desc, caller));
+        }
+        return facts;
+    }
+
+    private static int id(int index, String[] strings, int[] ids, Symbols symbols) {
+        int id = ids[index];
+        if (id == -1) {
+            id = symbols.intern(strings[index]);
+            ids[index] = id;
+        }
+        return id;
+    }
+
+    private static void index(String s, Map<String, Integer> indexes, List<String> strings) {
+        if (!indexes.containsKey(s)) {
+            indexes.put(s, strings.size());
+            strings.add(s);
+        }
+    }
+
+    /**
+     * A method or field instruction found in a method body, with the ids of {@link Symbols}
+     */
+    public static final class CallSite {
+        final boolean field;
+        final int className;
+        final int name;
+        final int desc;
+        /**
+         * Member id of the calling method, or {@link #NO_CALLER}
+         */
+        final int caller;
+
+        CallSite(boolean field, int className, int name, int desc, int caller) {
+            this.field = field;
+            this.className = className;
+            this.name = name;
+            this.desc = desc;
+            this.caller = caller;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            CallSite that = (CallSite) o;
+            return field == that.field && className == that.className && name == that.name
+                    && desc == that.desc && caller == that.caller;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = field ? 1 : 0;
+            hash = 31 * hash + className;
+            hash = 31 * hash + name;
+            hash = 31 * hash + desc;
+            return 31 * hash + caller;
+        }
+    }
+}
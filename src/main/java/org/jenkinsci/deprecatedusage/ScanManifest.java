@@ -0,0 +1,184 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.jenkinsci.deprecatedusage.search.SearchCriteria;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Results of the previous run, written next to the reports, so that the next run in incremental mode only analyzes
+ * the cores/plugins that were added or updated since.
+ * The results are only reused when they were computed with the same search criteria.
+ */
+public class ScanManifest {
+    /**
+     * Version of the content of the manifest, part of the fingerprint
+     */
+    private static final int FORMAT_VERSION = 2;
+
+    private final File file;
+    private final String criteriaFingerprint;
+
+    public ScanManifest(File file, String criteriaFingerprint) {
+        this.file = file;
+        this.criteriaFingerprint = criteriaFingerprint;
+    }
+
+    /**
+     * Returns a fingerprint of everything that can change the results of the analysis of a given core/plugin:
+     * the deprecated APIs found in the cores and the options related to the search.
+     */
+    public static String fingerprint(DeprecatedApi deprecatedApi, Options options) {
+        StringBuilder sb = new StringBuilder();
+        append(sb, "classes", deprecatedApi.getClasses());
+        append(sb, "methods", deprecatedApi.getMethods());
+        append(sb, "fields", deprecatedApi.getFields());
+        if (options.additionalMethodsFile != null) {
+            Options.getAdditionalMethodNames().forEach((className, methods) -> append(sb, "additionalMethods " + className, methods));
+        }
+        if (options.additionalFieldsFile != null) {
+            Options.getAdditionalFields().forEach((className, fields) -> append(sb, "additionalFields " + className, fields));
+        }
+        sb.append("includeJavaCoreClasses=").append(options.includeJavaCoreClasses).append('\n');
+        sb.append("onlyIncludeSpecified=").append(options.onlyIncludeSpecified).append('\n');
+        sb.append("onlyIncludeJenkinsClasses=").append(options.onlyIncludeJenkinsClasses).append('\n');
+        sb.append("includePluginLibs=").append(options.includePluginLibraries).append('\n');
+        sb.append("includeCoreLibs=").append(options.includeCoreLibraries).append('\n');
+        sb.append("recursive=").append(options.recursive).append('\n');
+        sb.append("scannerVersion=").append(ScanFacts.FORMAT_VERSION).append('\n');
+        sb.append("manifestVersion=").append(FORMAT_VERSION).append('\n');
+        return DigestUtils.sha256Hex(sb.toString());
+    }
+
+    private static void append(StringBuilder sb, String name, Collection<String> values) {
+        sb.append(name).append('\n');
+        for (String value : new TreeSet<>(values)) {
+            sb.append(value).append('\n');
+        }
+    }
+
+    /**
+     * @return the previous results by {@link Plugin#toString()}, or an empty map if there are none
+     * or if they were computed with other search criteria
+     */
+    public Map<String, DeprecatedUsage> load(SearchCriteria searchCriteria) {
+        Map<String, DeprecatedUsage> usages = new HashMap<>();
+        if (!file.exists()) {
+            System.out.println("No previous results found in " + file + ", analyzing everything");
+            return usages;
+        }
+        try {
+            JSONObject json = new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            if (!criteriaFingerprint.equals(json.optString("criteria"))) {
+                System.out.println("Previous results in " + file + " were computed with other search criteria, analyzing everything");
+                return usages;
+            }
+            JSONObject plugins = json.getJSONObject("plugins");
+            for (Object key : plugins.keySet()) {
+                JSONObject plugin = plugins.getJSONObject(key.toString());
+                DeprecatedUsage usage = new DeprecatedUsage(plugin.getString("name"), plugin.getString("version"), searchCriteria, false);
+                usage.restore(toSet(plugin.getJSONArray("classes")), toSet(plugin.getJSONArray("methods")),
+                        toSet(plugin.getJSONArray("fields")), toMap(plugin.getJSONObject("providerToConsumers")),
+                        toHierarchy(plugin.getJSONObject("definedClasses")), toHierarchy(plugin.getJSONObject("ancestorsOfUnknownClasses")));
+                usages.put(usage.getPlugin().toString(), usage);
+            }
+        } catch (IOException | JSONException e) {
+            System.out.println("Ignoring unreadable previous results in " + file + ": " + e);
+            usages.clear();
+        }
+        return usages;
+    }
+
+    public void write(List<DeprecatedUsage> usages) throws IOException {
+        JSONObject plugins = new JSONObject();
+        for (DeprecatedUsage usage : usages) {
+            if (usage.isAnalysisFailed()) {
+                // to be analyzed again next time
+                continue;
+            }
+            JSONObject plugin = new JSONObject();
+            plugin.put("name", usage.getPlugin().artifactId);
+            plugin.put("version", usage.getPlugin().version);
+            plugin.put("classes", usage.getClasses());
+            plugin.put("methods", usage.getMethods());
+            plugin.put("fields", usage.getFields());
+            plugin.put("providerToConsumers", usage.getProviderToConsumers());
+            // so that the classes of the plugin are known when resolving the calls of the updated plugins, and that
+            // the results are not reused if the classes of other plugins it calls through change
+            plugin.put("definedClasses", toJSON(usage.getDefinedClasses()));
+            plugin.put("ancestorsOfUnknownClasses", toJSON(usage.getAncestorsOfUnknownClasses()));
+            plugins.put(usage.getPlugin().toString(), plugin);
+        }
+        JSONObject json = new JSONObject();
+        json.put("criteria", criteriaFingerprint);
+        json.put("plugins", plugins);
+
+        Path directory = file.getAbsoluteFile().getParentFile().toPath();
+        Files.createDirectories(directory);
+        System.out.println("Writing " + file);
+        // written aside then moved, so that an interrupted run never leaves a partial manifest to the next one
+        Path tmp = Files.createTempFile(directory, file.getName(), ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writer.append(json.toString());
+        }
+        Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static JSONObject toJSON(Map<Integer, int[]> hierarchy) {
+        Symbols symbols = Symbols.get();
+        JSONObject json = new JSONObject();
+        hierarchy.forEach((className, classNames) -> {
+            JSONArray array = new JSONArray();
+            for (int name : classNames) {
+                array.put(symbols.symbol(name));
+            }
+            json.put(symbols.symbol(className), array);
+        });
+        return json;
+    }
+
+    private static Map<Integer, int[]> toHierarchy(JSONObject json) {
+        Symbols symbols = Symbols.get();
+        Map<Integer, int[]> hierarchy = new HashMap<>();
+        for (Object key : json.keySet()) {
+            JSONArray array = json.getJSONArray(key.toString());
+            int[] classNames = new int[array.length()];
+            for (int i = 0; i < classNames.length; i++) {
+                classNames[i] = symbols.intern(array.getString(i));
+            }
+            hierarchy.put(symbols.intern(key.toString()), classNames);
+        }
+        return hierarchy;
+    }
+
+    private static Set<String> toSet(JSONArray array) {
+        Set<String> set = new TreeSet<>();
+        for (int i = 0; i < array.length(); i++) {
+            set.add(array.getString(i));
+        }
+        return set;
+    }
+
+    private static Map<String, Set<String>> toMap(JSONObject object) {
+        Map<String, Set<String>> map = new HashMap<>();
+        for (Object key : object.keySet()) {
+            map.put(key.toString(), toSet(object.getJSONArray(key.toString())));
+        }
+        return map;
+    }
+}
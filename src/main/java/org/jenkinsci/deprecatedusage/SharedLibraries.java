@@ -0,0 +1,59 @@
+package org.jenkinsci.deprecatedusage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Facts of the third-party jars bundled by the plugins (commons-*, guava, jackson...), read once per analysis and
+ * shared by all the plugins bundling the same jar. The jars are identified by {@link WarReader.LibraryJar#getKey()}.
+ * <p>
+ * The first plugin reaching a jar reads it, the other ones wait for its facts. The facts depend on the search
+ * criteria they were collected with, so an instance must only be used with one criteria.
+ */
+public final class SharedLibraries {
+    private final ConcurrentHashMap<String, CompletableFuture<ScanFacts>> factsByKey = new ConcurrentHashMap<>();
+    private final AtomicInteger reused = new AtomicInteger();
+
+    /**
+     * @return the facts of the library, waiting for them if another plugin is reading it, or null if the caller has
+     * to read it and then to call {@link #complete(String, ScanFacts)} or {@link #fail(String)}
+     */
+    ScanFacts claim(String key) {
+        CompletableFuture<ScanFacts> future = factsByKey.putIfAbsent(key, new CompletableFuture<>());
+        if (future == null) {
+            return null;
+        }
+        try {
+            ScanFacts facts = future.join();
+            reused.incrementAndGet();
+            return facts;
+        } catch (CompletionException e) {
+            // the other plugin could not read it, this one tries again
+            return claim(key);
+        }
+    }
+
+    void complete(String key, ScanFacts facts) {
+        factsByKey.get(key).complete(facts);
+    }
+
+    void fail(String key) {
+        factsByKey.remove(key).completeExceptionally(new IllegalStateException("Failed to read " + key));
+    }
+
+    /**
+     * Returns the number of distinct library jars read
+     */
+    public int getReadCount() {
+        return factsByKey.size();
+    }
+
+    /**
+     * Returns the number of times the facts of a library jar were reused instead of reading it again
+     */
+    public int getReusedCount() {
+        return reused.get();
+    }
+}
@@ -0,0 +1,164 @@
+package org.jenkinsci.deprecatedusage;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Global table of the symbols (class names, member names and descriptors) found while scanning, each one mapped to a
+ * compact int id. Methods and fields are also mapped to an id, from the ids of their owner, name and descriptor.
+ * <p>
+ * The keys of {@link DeprecatedApi#getMethodKey(String, String, String)} and
+ * {@link DeprecatedApi#getFieldKey(String, String, String)} are only built from the ids when needed by the reports.
+ * Ids are never released, they are shared by all the threads.
+ */
+public final class Symbols {
+    /**
+     * Descriptor id of the fields, since their descriptor is not part of their key
+     */
+    public static final int NO_DESC = -1;
+
+    private static final Symbols INSTANCE = new Symbols();
+
+    private final ConcurrentHashMap<String, Integer> symbolIds = new ConcurrentHashMap<>();
+    // written under the lock, before the id is published in symbolIds
+    private volatile String[] symbols = new String[1024];
+    private int symbolCount;
+
+    private final ConcurrentHashMap<Member, Integer> memberIds = new ConcurrentHashMap<>();
+    // owner, name and descriptor of each member, written under the lock, before the id is published in memberIds
+    private volatile int[] members = new int[3 * 1024];
+    private int memberCount;
+
+    private Symbols() {
+    }
+
+    public static Symbols get() {
+        return INSTANCE;
+    }
+
+    public int intern(String symbol) {
+        Integer id = symbolIds.get(symbol);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = symbolIds.get(symbol);
+            if (id == null) {
+                if (symbolCount == symbols.length) {
+                    symbols = Arrays.copyOf(symbols, symbolCount * 2);
+                }
+                symbols[symbolCount] = symbol;
+                id = symbolCount++;
+                symbolIds.put(symbol, id);
+            }
+            return id;
+        }
+    }
+
+    public String symbol(int id) {
+        return symbols[id];
+    }
+
+    /**
+     * @param desc the id of the descriptor, or {@link #NO_DESC} for a field
+     */
+    public int member(int owner, int name, int desc) {
+        Member member = new Member(owner, name, desc);
+        Integer id = memberIds.get(member);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = memberIds.get(member);
+            if (id == null) {
+                if (3 * memberCount == members.length) {
+                    members = Arrays.copyOf(members, members.length * 2);
+                }
+                int[] m = members;
+                m[3 * memberCount] = owner;
+                m[3 * memberCount + 1] = name;
+                m[3 * memberCount + 2] = desc;
+                id = memberCount++;
+                memberIds.put(member, id);
+            }
+            return id;
+        }
+    }
+
+    public int method(String className, String name, String desc) {
+        return member(intern(className), intern(name), intern(desc));
+    }
+
+    public int field(String className, String name) {
+        return member(intern(className), intern(name), NO_DESC);
+    }
+
+    public int owner(int member) {
+        return members[3 * member];
+    }
+
+    public int name(int member) {
+        return members[3 * member + 1];
+    }
+
+    public int desc(int member) {
+        return members[3 * member + 2];
+    }
+
+    public boolean isField(int member) {
+        return desc(member) == NO_DESC;
+    }
+
+    /**
+     * Returns the key of the member, as built by {@link DeprecatedApi#getMethodKey(String, String, String)}
+     * or {@link DeprecatedApi#getFieldKey(String, String, String)}
+     */
+    public String key(int member) {
+        int[] m = members;
+        String className = symbols[m[3 * member]];
+        String name = symbols[m[3 * member + 1]];
+        int desc = m[3 * member + 2];
+        if (desc == NO_DESC) {
+            return DeprecatedApi.getFieldKey(className, name, null);
+        }
+        return DeprecatedApi.getMethodKey(className, name, symbols[desc]);
+    }
+
+    /**
+     * Returns the id of the member with the given method or field key
+     */
+    public int parseKey(String key) {
+        String className = DeprecatedApi.extractClassNameFromKey(key);
+        int descIndex = key.indexOf('(', className.length());
+        if (descIndex == -1) {
+            return field(className, key.substring(className.length() + 1));
+        }
+        return method(className, key.substring(className.length() + 1, descIndex), key.substring(descIndex));
+    }
+
+    private static final class Member {
+        private final int owner;
+        private final int name;
+        private final int desc;
+
+        Member(int owner, int name, int desc) {
+            this.owner = owner;
+            this.name = name;
+            this.desc = desc;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Member)) {
+                return false;
+            }
+            Member that = (Member) o;
+            return owner == that.owner && name == that.name && desc == that.desc;
+        }
+
+        @Override
+        public int hashCode() {
+            return (owner * 31 + name) * 31 + desc;
+        }
+    }
+}
@@ -24,7 +24,7 @@ public class UpdateCenter {
         }
     }
 
-    private static JenkinsFile parse(JSONObject jsonObject) throws JSONException {
+    static JenkinsFile parse(JSONObject jsonObject) throws JSONException {
         if (jsonObject == null) {
             return null;
         }
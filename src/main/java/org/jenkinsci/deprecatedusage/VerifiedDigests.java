@@ -0,0 +1,139 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Index of the downloaded files whose digest was verified, with their size and modification time, stored in
+ * work/verified-digests.json. A file which did not change since it was verified with the digest expected by the
+ * update center is trusted without reading it again. Shared by all the threads.
+ */
+public class VerifiedDigests {
+    private static final int FORMAT_VERSION = 1;
+
+    private final File file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicInteger trusted = new AtomicInteger();
+
+    public VerifiedDigests(File file) {
+        this.file = file;
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            JSONObject json = new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            if (json.optInt("version") != FORMAT_VERSION) {
+                return;
+            }
+            JSONObject files = json.getJSONObject("files");
+            for (Object path : files.keySet()) {
+                JSONObject entry = files.getJSONObject(path.toString());
+                entries.put(path.toString(), new Entry(entry.getLong("size"), entry.getLong("lastModified"), entry.getString("digest")));
+            }
+        } catch (IOException | JSONException e) {
+            System.out.println("Ignoring unreadable verified digests in " + file + ": " + e);
+            entries.clear();
+        }
+    }
+
+    /**
+     * Same as {@link JenkinsFile#isFileSynchronized()}, without reading the file if it was already verified
+     */
+    public boolean isSynchronized(JenkinsFile jenkinsFile) {
+        String digestKey = jenkinsFile.getDigestKey();
+        Path path = jenkinsFile.getFile().toPath();
+        if (digestKey != null) {
+            Entry entry = entries.get(path.toString());
+            if (entry != null && entry.digest.equals(digestKey) && entry.matches(path)) {
+                trusted.incrementAndGet();
+                return true;
+            }
+        }
+        if (!jenkinsFile.isFileSynchronized()) {
+            return false;
+        }
+        verified(jenkinsFile);
+        return true;
+    }
+
+    /**
+     * Records that the file matches its digest, after it was downloaded and checked
+     */
+    public void verified(JenkinsFile jenkinsFile) {
+        String digestKey = jenkinsFile.getDigestKey();
+        if (digestKey == null) {
+            return;
+        }
+        Path path = jenkinsFile.getFile().toPath();
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            entries.put(path.toString(), new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), digestKey));
+        } catch (IOException ignored) {
+            // verified again next time
+        }
+    }
+
+    /**
+     * Returns the number of files trusted without reading them
+     */
+    public int getTrustedCount() {
+        return trusted.get();
+    }
+
+    public void write() throws IOException {
+        JSONObject files = new JSONObject();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (!entry.getValue().matches(new File(entry.getKey()).toPath())) {
+                continue;
+            }
+            JSONObject json = new JSONObject();
+            json.put("size", entry.getValue().size);
+            json.put("lastModified", entry.getValue().lastModified);
+            json.put("digest", entry.getValue().digest);
+            files.put(entry.getKey(), json);
+        }
+        JSONObject json = new JSONObject();
+        json.put("version", FORMAT_VERSION);
+        json.put("files", files);
+
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        Path tmp = new File(file.getPath() + ".tmp").toPath();
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writer.append(json.toString());
+        }
+        Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static final class Entry {
+        private final long size;
+        private final long lastModified;
+        private final String digest;
+
+        Entry(long size, long lastModified, String digest) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.digest = digest;
+        }
+
+        boolean matches(Path path) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                return attributes.size() == size && attributes.lastModifiedTime().toMillis() == lastModified;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+}
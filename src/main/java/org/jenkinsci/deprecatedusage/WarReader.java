@@ -1,33 +1,97 @@
 package org.jenkinsci.deprecatedusage;
 
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
 import java.util.Enumeration;
+import java.util.Iterator;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 
 /**
  * Scan HPI / JPI / WAR files
+ * <p>
+ * The archive and its nested jars are read with a {@link ZipIndex} when possible, so that only the class files are
+ * inflated. Otherwise (ZIP64 archives for example), they are read with {@link ZipFile} and {@link JarReader}.
+ * <p>
+ * When asked to, the third-party jars bundled in WEB-INF/lib/ are identified by their content, see
+ * {@link #getCurrentLibrary()}, so that the same jar bundled by several plugins can be read once.
  */
 public class WarReader implements Closeable {
     private final File warFile;
+    private final boolean scanOnlyJarOfPlugin;
+    private final boolean identifyLibraries;
+    private LibraryJar currentLibrary;
+    private ByteBuffer currentLibraryContent;
+
+    // indexed reading
+    private final ZipIndex warIndex;
+    private final Iterator<ZipIndex.Entry> warEntries;
+    private ZipIndex jarIndex;
+    private Iterator<ZipIndex.Entry> jarEntries;
+    private ZipIndex currentIndex;
+    private ZipIndex.Entry currentEntry;
+
+    // streamed reading
     private final ZipFile zipFile;
     private final Enumeration<? extends ZipEntry> entries;
-    private final boolean scanOnlyJarOfPlugin;
     private ZipEntry entry;
     private JarReader jarReader;
 
     public WarReader(File warFile, boolean scanOnlyJarOfPlugin) throws IOException {
+        this(warFile, scanOnlyJarOfPlugin, false);
+    }
+
+    /**
+     * @param identifyLibraries true to compute the {@link #getCurrentLibrary() identity} of the library jars
+     */
+    public WarReader(File warFile, boolean scanOnlyJarOfPlugin, boolean identifyLibraries) throws IOException {
         super();
         this.warFile = warFile;
-        this.zipFile = new ZipFile(warFile);
-        this.entries = zipFile.entries();
         this.scanOnlyJarOfPlugin = scanOnlyJarOfPlugin;
+        this.identifyLibraries = identifyLibraries;
+        ZipIndex index;
+        try {
+            index = ZipIndex.open(warFile);
+        } catch (ZipException e) {
+            index = null;
+        }
+        this.warIndex = index;
+        if (warIndex != null) {
+            this.warEntries = warIndex.getEntries().iterator();
+            this.zipFile = null;
+            this.entries = null;
+        } else {
+            this.warEntries = null;
+            this.zipFile = new ZipFile(warFile);
+            this.entries = zipFile.entries();
+        }
     }
 
     public String nextClass() throws IOException {
+        if (jarEntries != null) {
+            while (jarEntries.hasNext()) {
+                ZipIndex.Entry jarEntry = jarEntries.next();
+                if (jarEntry.getName().endsWith(".class")) {
+                    currentIndex = jarIndex;
+                    currentEntry = jarEntry;
+                    return jarEntry.getName();
+                }
+            }
+            jarEntries = null;
+            jarIndex = null;
+            currentLibrary = null;
+            currentLibraryContent = null;
+        }
         if (jarReader != null) {
             final String fileName = jarReader.nextClass();
             if (fileName != null) {
@@ -35,19 +99,31 @@ public class WarReader implements Closeable {
             } else {
                 jarReader.close();
                 jarReader = null;
+                currentLibrary = null;
+                currentLibraryContent = null;
             }
         }
+        if (warIndex != null) {
+            return nextIndexedClass();
+        }
         while (entries.hasMoreElements()) {
             entry = entries.nextElement();
             final String fileName = entry.getName();
-            if (fileName.startsWith("WEB-INF/lib/") && fileName.endsWith(".jar")) {
-                final boolean shouldScanJar = !scanOnlyJarOfPlugin
-                        || warFile.getName().equals(fileName.replace("WEB-INF/lib/", "").replace(".jar", ".hpi"))
-                        || fileName.contains("jenkins-core");
-                if (shouldScanJar) {
+            if (isJarToScan(fileName)) {
+                if (identifyLibraries && isLibrary(fileName)) {
+                    // read once to compute its digest
+                    byte[] bytes;
+                    try (InputStream input = zipFile.getInputStream(entry)) {
+                        bytes = IOUtils.toByteArray(input);
+                    }
+                    currentLibrary = new LibraryJar(fileName, entry.getCrc(), bytes.length,
+                            DigestUtils.sha256Hex(bytes));
+                    currentLibraryContent = ByteBuffer.wrap(bytes);
+                    jarReader = new JarReader(new ByteArrayInputStream(bytes));
+                } else {
                     jarReader = new JarReader(zipFile.getInputStream(entry));
-                    return this.nextClass();
                 }
+                return this.nextClass();
             } else if (fileName.startsWith("WEB-INF/classes/") && fileName.endsWith(".class")) {
                 return fileName;
             }
@@ -55,15 +131,174 @@ public class WarReader implements Closeable {
         return null;
     }
 
+    private String nextIndexedClass() throws IOException {
+        while (warEntries.hasNext()) {
+            final ZipIndex.Entry warEntry = warEntries.next();
+            final String fileName = warEntry.getName();
+            if (isJarToScan(fileName)) {
+                openJar(warEntry);
+                return this.nextClass();
+            } else if (fileName.startsWith("WEB-INF/classes/") && fileName.endsWith(".class")) {
+                currentIndex = warIndex;
+                currentEntry = warEntry;
+                return fileName;
+            }
+        }
+        return null;
+    }
+
+    private void openJar(ZipIndex.Entry warEntry) throws IOException {
+        // a stored jar is a view on the war, a compressed one is inflated once, but not its resources
+        ByteBuffer content = warIndex.getContent(warEntry);
+        if (identifyLibraries && isLibrary(warEntry.getName())) {
+            MessageDigest digest = DigestUtils.getSha256Digest();
+            digest.update(content.duplicate());
+            currentLibrary = new LibraryJar(warEntry.getName(), warEntry.getCrc(), warEntry.getSize(),
+                    Hex.encodeHexString(digest.digest()));
+            currentLibraryContent = content.duplicate();
+        }
+        try {
+            jarIndex = new ZipIndex(content);
+            jarEntries = jarIndex.getEntries().iterator();
+        } catch (ZipException e) {
+            byte[] bytes = new byte[content.remaining()];
+            content.get(bytes);
+            jarReader = new JarReader(new ByteArrayInputStream(bytes));
+        }
+    }
+
+    private boolean isJarToScan(String fileName) {
+        if (fileName.startsWith("WEB-INF/lib/") && fileName.endsWith(".jar")) {
+            return !scanOnlyJarOfPlugin
+                    || warFile.getName().equals(fileName.replace("WEB-INF/lib/", "").replace(".jar", ".hpi"))
+                    || fileName.contains("jenkins-core");
+        }
+        return false;
+    }
+
+    /**
+     * A bundled third-party jar, as opposed to the jar of the plugin itself or the jar of the core
+     */
+    private boolean isLibrary(String fileName) {
+        return !warFile.getName().equals(fileName.replace("WEB-INF/lib/", "").replace(".jar", ".hpi"))
+                && !fileName.contains("jenkins-core");
+    }
+
+    /**
+     * Returns the library jar containing the current class, or null if the class is not in a library jar or if the
+     * libraries are not identified. A new instance is returned for each library jar read.
+     */
+    public LibraryJar getCurrentLibrary() {
+        return currentLibrary;
+    }
+
+    /**
+     * Returns the content of the {@link #getCurrentLibrary() current library jar}, to read it with
+     * {@link #readClasses(ByteBuffer, ClassFileVisitor)}, or null if the class is not in a library jar
+     */
+    public ByteBuffer getCurrentLibraryContent() {
+        return currentLibraryContent == null ? null : currentLibraryContent.duplicate();
+    }
+
+    /**
+     * Skips the remaining classes of the current nested jar
+     */
+    public void skipCurrentJar() throws IOException {
+        jarEntries = null;
+        jarIndex = null;
+        if (jarReader != null) {
+            jarReader.close();
+            jarReader = null;
+        }
+        currentLibrary = null;
+        currentLibraryContent = null;
+    }
+
+    /**
+     * Reads the class files of a jar, independently from the war containing it
+     */
+    public static void readClasses(ByteBuffer jarContent, ClassFileVisitor visitor) throws IOException {
+        ZipIndex index;
+        try {
+            index = new ZipIndex(jarContent.duplicate());
+        } catch (ZipException e) {
+            byte[] bytes = new byte[jarContent.remaining()];
+            jarContent.duplicate().get(bytes);
+            try (JarReader reader = new JarReader(new ByteArrayInputStream(bytes))) {
+                for (String fileName = reader.nextClass(); fileName != null; fileName = reader.nextClass()) {
+                    visitor.visit(fileName, IOUtils.toByteArray(reader.getInputStream()));
+                }
+            }
+            return;
+        }
+        for (ZipIndex.Entry entry : index.getEntries()) {
+            if (entry.getName().endsWith(".class")) {
+                visitor.visit(entry.getName(), index.read(entry));
+            }
+        }
+    }
+
+    public interface ClassFileVisitor {
+        void visit(String fileName, byte[] data) throws IOException;
+    }
+
+    /**
+     * Returns the content of the current class file
+     */
+    public byte[] readClass() throws IOException {
+        if (jarReader == null && currentEntry != null) {
+            return currentIndex.read(currentEntry);
+        }
+        return IOUtils.toByteArray(getInputStream());
+    }
+
     public InputStream getInputStream() throws IOException {
         if (jarReader != null) {
             return jarReader.getInputStream();
         }
+        if (currentEntry != null) {
+            return new ByteArrayInputStream(currentIndex.read(currentEntry));
+        }
         return zipFile.getInputStream(entry);
     }
 
     @Override
     public void close() throws IOException {
-        zipFile.close();
+        if (zipFile != null) {
+            zipFile.close();
+        }
+    }
+
+    /**
+     * Identity of a library jar: the CRC and size of its entry, and the digest of its content
+     */
+    public static final class LibraryJar {
+        private final String fileName;
+        private final long crc;
+        private final long size;
+        private final String sha256;
+
+        LibraryJar(String fileName, long crc, long size, String sha256) {
+            this.fileName = fileName;
+            this.crc = crc;
+            this.size = size;
+            this.sha256 = sha256;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        /**
+         * Same for all the copies of the jar, whatever their file name
+         */
+        public String getKey() {
+            return Long.toHexString(crc) + '-' + size + '-' + sha256;
+        }
+
+        @Override
+        public String toString() {
+            return fileName;
+        }
     }
 }
@@ -0,0 +1,276 @@
+package org.jenkinsci.deprecatedusage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Random access to the entries of a zip file held in a buffer (a file read or memory-mapped, or a nested jar),
+ * using its central directory. Only the entries which are read are inflated, and their CRC is checked like
+ * {@link java.util.zip.ZipInputStream} does.
+ * ZIP64 and encrypted archives are not supported, a {@link ZipException} is thrown for them.
+ */
+public class ZipIndex {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_HEADER_SIGNATURE = 0x06054b50;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    /**
+     * Files up to this size are read instead of being mapped: a mapping is only released once garbage collected,
+     * and the mappings of thousands of plugins would pile up outside of the heap
+     */
+    private static final long MAX_READ_SIZE = 64L << 20;
+
+    private final ByteBuffer buffer;
+    private final List<Entry> entries;
+
+    public ZipIndex(ByteBuffer data) throws ZipException {
+        this.buffer = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+        this.entries = Collections.unmodifiableList(readCentralDirectory());
+    }
+
+    /**
+     * Reads the given file, or memory-maps it if it is large, and indexes it.
+     */
+    public static ZipIndex open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new ZipException("Too large to be mapped: " + file);
+            }
+            if (size > MAX_READ_SIZE) {
+                // the mapping stays valid after the channel is closed
+                return new ZipIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            }
+            ByteBuffer content = ByteBuffer.allocate((int) size);
+            while (content.hasRemaining()) {
+                if (channel.read(content) < 0) {
+                    throw new ZipException("Truncated while reading: " + file);
+                }
+            }
+            content.flip();
+            return new ZipIndex(content);
+        }
+    }
+
+    /**
+     * Entries, in the order of the central directory
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Returns the content of the entry: a view on the archive without any copy if the entry is stored,
+     * or the inflated content if the entry is compressed.
+     */
+    public ByteBuffer getContent(Entry entry) throws IOException {
+        if (entry.method == Entry.STORED) {
+            ByteBuffer raw = getRawContent(entry);
+            if (raw.remaining() != entry.size) {
+                throw new ZipException("Invalid stored size for " + entry.name);
+            }
+            checkCrc(entry, raw);
+            return raw;
+        }
+        return ByteBuffer.wrap(read(entry));
+    }
+
+    /**
+     * Returns a copy of the uncompressed content of the entry.
+     */
+    public byte[] read(Entry entry) throws IOException {
+        ByteBuffer raw = getRawContent(entry);
+        if (entry.method == Entry.STORED) {
+            byte[] bytes = new byte[raw.remaining()];
+            raw.get(bytes);
+            checkCrc(entry, ByteBuffer.wrap(bytes));
+            return bytes;
+        }
+        if (entry.method != Entry.DEFLATED) {
+            throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.name);
+        }
+        byte[] compressed;
+        int offset;
+        if (raw.hasArray()) {
+            compressed = raw.array();
+            offset = raw.arrayOffset() + raw.position();
+        } else {
+            compressed = new byte[raw.remaining()];
+            raw.get(compressed);
+            offset = 0;
+        }
+        byte[] bytes = new byte[(int) entry.size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed, offset, (int) entry.compressedSize);
+            int length = 0;
+            boolean dummyByteGiven = false;
+            while (length < bytes.length) {
+                int n = inflater.inflate(bytes, length, bytes.length - length);
+                length += n;
+                if (n == 0) {
+                    if (inflater.needsInput() && !dummyByteGiven) {
+                        // in nowrap mode, zlib may need an extra dummy byte to complete (same as ZipFile does)
+                        inflater.setInput(new byte[1]);
+                        dummyByteGiven = true;
+                    } else {
+                        break;
+                    }
+                }
+            }
+            if (length != bytes.length) {
+                throw new ZipException("Invalid compressed data for " + entry.name);
+            }
+        } catch (DataFormatException e) {
+            ZipException zipException = new ZipException("Invalid compressed data for " + entry.name);
+            zipException.initCause(e);
+            throw zipException;
+        } finally {
+            inflater.end();
+        }
+        checkCrc(entry, ByteBuffer.wrap(bytes));
+        return bytes;
+    }
+
+    private static void checkCrc(Entry entry, ByteBuffer content) throws ZipException {
+        CRC32 crc = new CRC32();
+        crc.update(content.duplicate());
+        if (crc.getValue() != entry.crc) {
+            throw new ZipException("Invalid CRC for " + entry.name);
+        }
+    }
+
+    private ByteBuffer getRawContent(Entry entry) throws ZipException {
+        int localHeader = entry.localHeaderOffset;
+        if (localHeader < 0 || localHeader + LOCAL_HEADER_SIZE > buffer.limit()
+                || buffer.getInt(localHeader) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header for " + entry.name);
+        }
+        // name and extra field lengths of the local header may differ from the central directory ones
+        long start = (long) localHeader + LOCAL_HEADER_SIZE + unsignedShort(localHeader + 26) + unsignedShort(localHeader + 28);
+        long end = start + entry.compressedSize;
+        if (end > buffer.limit()) {
+            throw new ZipException("Truncated entry " + entry.name);
+        }
+        ByteBuffer raw = buffer.duplicate();
+        raw.limit((int) end).position((int) start);
+        return raw.slice();
+    }
+
+    private List<Entry> readCentralDirectory() throws ZipException {
+        int end = findEndOfCentralDirectory();
+        int count = unsignedShort(end + 10);
+        long size = unsignedInt(end + 12);
+        long offset = unsignedInt(end + 16);
+        if (count == 0xFFFF || size == 0xFFFFFFFFL || offset == 0xFFFFFFFFL) {
+            throw new ZipException("ZIP64 archives are not supported");
+        }
+        if (offset + size != end) {
+            // archives with a prefix (or a ZIP64 end header) are not supported
+            throw new ZipException("Unexpected central directory location");
+        }
+        List<Entry> list = new ArrayList<>(count);
+        int position = (int) offset;
+        for (int i = 0; i < count; i++) {
+            if (position + CENTRAL_HEADER_SIZE > end || buffer.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory entry");
+            }
+            int flags = unsignedShort(position + 8);
+            int method = unsignedShort(position + 10);
+            long crc = unsignedInt(position + 16);
+            long compressedSize = unsignedInt(position + 20);
+            long uncompressedSize = unsignedInt(position + 24);
+            int nameLength = unsignedShort(position + 28);
+            int extraLength = unsignedShort(position + 30);
+            int commentLength = unsignedShort(position + 32);
+            long localHeaderOffset = unsignedInt(position + 42);
+            if ((flags & 1) != 0) {
+                throw new ZipException("Encrypted archives are not supported");
+            }
+            if (compressedSize == 0xFFFFFFFFL || uncompressedSize == 0xFFFFFFFFL || localHeaderOffset == 0xFFFFFFFFL
+                    || uncompressedSize > Integer.MAX_VALUE) {
+                throw new ZipException("ZIP64 archives are not supported");
+            }
+            byte[] name = new byte[nameLength];
+            ByteBuffer nameBuffer = buffer.duplicate();
+            nameBuffer.position(position + CENTRAL_HEADER_SIZE);
+            nameBuffer.get(name);
+            list.add(new Entry(new String(name, StandardCharsets.UTF_8), method, crc, compressedSize, uncompressedSize,
+                    (int) localHeaderOffset));
+            position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return list;
+    }
+
+    private int findEndOfCentralDirectory() throws ZipException {
+        int limit = buffer.limit();
+        // the end header is followed by a comment of at most 64 kiB
+        int min = Math.max(0, limit - END_HEADER_SIZE - 0xFFFF);
+        for (int position = limit - END_HEADER_SIZE; position >= min; position--) {
+            if (buffer.getInt(position) == END_HEADER_SIGNATURE
+                    && position + END_HEADER_SIZE + unsignedShort(position + 20) == limit) {
+                return position;
+            }
+        }
+        throw new ZipException("End of central directory not found");
+    }
+
+    private int unsignedShort(int position) {
+        return buffer.getShort(position) & 0xFFFF;
+    }
+
+    private long unsignedInt(int position) {
+        return buffer.getInt(position) & 0xFFFFFFFFL;
+    }
+
+    public static final class Entry {
+        static final int STORED = 0;
+        static final int DEFLATED = 8;
+
+        private final String name;
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final int localHeaderOffset;
+
+        Entry(String name, int method, long crc, long compressedSize, long size, int localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isStored() {
+            return method == STORED;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+}
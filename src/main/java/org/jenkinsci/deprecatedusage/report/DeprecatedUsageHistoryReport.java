@@ -0,0 +1,129 @@
+package org.jenkinsci.deprecatedusage.report;
+
+import org.jenkinsci.deprecatedusage.DeprecatedApi;
+import org.jenkinsci.deprecatedusage.DeprecatedUsage;
+import org.jenkinsci.deprecatedusage.JavadocUtil;
+import org.jenkinsci.deprecatedusage.PluginVersions;
+import org.jenkinsci.deprecatedusage.Report;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * This report shows, for each plugin scanned in several versions, the versions using each deprecated API and the
+ * version in which it stopped being used.
+ */
+public class DeprecatedUsageHistoryReport extends Report {
+    // by plugin, from the oldest version to the newest
+    private final SortedMap<String, List<DeprecatedUsage>> usagesByPlugin = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    public DeprecatedUsageHistoryReport(DeprecatedApi api, List<DeprecatedUsage> usages, File outputDir, String reportName) {
+        super(api, usages, outputDir, reportName);
+
+        for (DeprecatedUsage usage : usages) {
+            usagesByPlugin.computeIfAbsent(usage.getPlugin().artifactId, s -> new ArrayList<>()).add(usage);
+        }
+        Comparator<DeprecatedUsage> byVersion = Comparator.comparing(usage -> usage.getPlugin().version, PluginVersions.VERSION_ORDER);
+        usagesByPlugin.values().forEach(list -> list.sort(byVersion));
+    }
+
+    /**
+     * Returns the versions using each API used by at least one version of the plugin
+     */
+    private static SortedMap<String, Set<String>> getVersionsByApi(List<DeprecatedUsage> versions) {
+        SortedMap<String, Set<String>> versionsByApi = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (DeprecatedUsage usage : versions) {
+            String version = usage.getPlugin().version;
+            for (String clazz : usage.getClasses()) {
+                versionsByApi.computeIfAbsent(clazz, s -> new LinkedHashSet<>()).add(version);
+            }
+            for (String method : usage.getMethods()) {
+                versionsByApi.computeIfAbsent(method, s -> new LinkedHashSet<>()).add(version);
+            }
+            for (String field : usage.getFields()) {
+                versionsByApi.computeIfAbsent(field, s -> new LinkedHashSet<>()).add(version);
+            }
+        }
+        return versionsByApi;
+    }
+
+    /**
+     * Returns the version following the last one using the API, or null if the newest version still uses it
+     */
+    private static String getRemovedIn(List<DeprecatedUsage> versions, Set<String> usedIn) {
+        for (int i = versions.size() - 1; i > 0; i--) {
+            if (usedIn.contains(versions.get(i).getPlugin().version)) {
+                return null;
+            }
+            if (usedIn.contains(versions.get(i - 1).getPlugin().version)) {
+                return versions.get(i).getPlugin().version;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected void generateHtmlReport(Writer writer) throws IOException {
+        writer.append("<h1>Deprecated Usage History By Plugin</h1>");
+
+        for (Map.Entry<String, List<DeprecatedUsage>> entry : usagesByPlugin.entrySet()) {
+            List<DeprecatedUsage> versions = entry.getValue();
+            SortedMap<String, Set<String>> versionsByApi = getVersionsByApi(versions);
+            if (versionsByApi.isEmpty()) {
+                continue;
+            }
+            writer.append("<div class='plugin'><h2 id='").append(entry.getKey()).append("'><a href='")
+                    .append(versions.get(0).getPlugin().getUrl()).append("'>").append(entry.getKey()).append("</a></h2>");
+            writer.append("<p>Versions: ");
+            for (int i = 0; i < versions.size(); i++) {
+                writer.append(i == 0 ? "" : ", ").append(versions.get(i).getPlugin().version);
+            }
+            writer.append("</p><table><tr><th>API</th><th>Used in</th><th>Removed in</th></tr>\n");
+            for (Map.Entry<String, Set<String>> api : versionsByApi.entrySet()) {
+                String removedIn = getRemovedIn(versions, api.getValue());
+                writer.append("<tr><td>").append(JavadocUtil.signatureToJenkinsdocLink(api.getKey())).append("</td><td>")
+                        .append(String.join(", ", api.getValue())).append("</td><td>")
+                        .append(removedIn != null ? removedIn : "").append("</td></tr>\n");
+            }
+            writer.append("</table></div>\n\n");
+        }
+    }
+
+    @Override
+    protected void generateJsonReport(Writer writer) throws IOException {
+        JSONObject map = new JSONObject();
+        for (Map.Entry<String, List<DeprecatedUsage>> entry : usagesByPlugin.entrySet()) {
+            List<DeprecatedUsage> versions = entry.getValue();
+            JSONObject plugin = new JSONObject();
+
+            JSONArray scannedVersions = new JSONArray();
+            for (DeprecatedUsage usage : versions) {
+                scannedVersions.put(usage.getPlugin().version);
+            }
+            plugin.put("versions", scannedVersions);
+
+            JSONObject apis = new JSONObject();
+            for (Map.Entry<String, Set<String>> api : getVersionsByApi(versions).entrySet()) {
+                JSONObject history = new JSONObject();
+                history.put("usedIn", new JSONArray(api.getValue()));
+                history.putOpt("removedIn", getRemovedIn(versions, api.getValue()));
+                apis.put(api.getKey(), history);
+            }
+            plugin.put("apis", apis);
+
+            map.put(entry.getKey(), plugin);
+        }
+        writer.append(map.toString(2));
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.deprecatedusage.search;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * Matches class names against the patterns of the options: exact names, {@code Xxx*} to match the names starting
+ * with Xxx, {@code *Xxx} for the names ending with Xxx and {@code *Xxx*} for the names containing Xxx.
+ * <p>
+ * The patterns are compiled into a hash set, a trie of the prefixes, a trie of the reversed suffixes and an
+ * Aho-Corasick automaton of the substrings, so that a match reads the class name once per kind of pattern,
+ * whatever the number of patterns.
+ */
+final class ClassNameMatcher implements Predicate<String> {
+    private final Set<String> exactMatch;
+    private final Trie startsWith;
+    private final Trie endsWith;
+    private final Trie contains;
+
+    private ClassNameMatcher(Set<String> exactMatch, Trie startsWith, Trie endsWith, Trie contains) {
+        this.exactMatch = exactMatch;
+        this.startsWith = startsWith;
+        this.endsWith = endsWith;
+        this.contains = contains;
+    }
+
+    static ClassNameMatcher compile(Collection<String> patterns) {
+        Set<String> exactMatch = new HashSet<>();
+        Trie.Builder startsWith = new Trie.Builder();
+        Trie.Builder endsWith = new Trie.Builder();
+        Trie.Builder contains = new Trie.Builder();
+
+        for (String pattern : patterns) {
+            // careful, the star position is reversed compared to the behavior
+            // we want the string that startsWith Xxx, so the pattern will be Xxx* (star is at the end)
+            boolean isStartingWith = pattern.endsWith("*");
+            boolean isEndingWith = pattern.startsWith("*");
+            if (isStartingWith && isEndingWith) {
+                // "*" alone matches everything
+                contains.add(pattern.length() > 1 ? pattern.substring(1, pattern.length() - 1) : "");
+            } else if (isStartingWith) {
+                startsWith.add(pattern.substring(0, pattern.length() - 1));
+            } else if (isEndingWith) {
+                endsWith.add(new StringBuilder(pattern.substring(1)).reverse());
+            } else {
+                exactMatch.add(pattern);
+            }
+        }
+        return new ClassNameMatcher(exactMatch, startsWith.build(false), endsWith.build(false), contains.build(true));
+    }
+
+    @Override
+    public boolean test(String className) {
+        return exactMatch.contains(className)
+                || startsWith.matchesPrefix(className)
+                || endsWith.matchesReversedSuffix(className)
+                || contains.matchesSubstring(className);
+    }
+
+    /**
+     * Trie with its edges sorted by char in flat arrays, and optionally the failure links of Aho-Corasick
+     */
+    private static final class Trie {
+        private static final int ROOT = 0;
+
+        // the edges of node n are between firstEdge[n] and firstEdge[n + 1]
+        private final int[] firstEdge;
+        private final char[] edgeChars;
+        private final int[] edgeTargets;
+        // true if a pattern ends at the node (or, with failure links, at one of its suffixes)
+        private final boolean[] terminal;
+        private final int[] failure;
+
+        private Trie(int[] firstEdge, char[] edgeChars, int[] edgeTargets, boolean[] terminal, int[] failure) {
+            this.firstEdge = firstEdge;
+            this.edgeChars = edgeChars;
+            this.edgeTargets = edgeTargets;
+            this.terminal = terminal;
+            this.failure = failure;
+        }
+
+        private boolean isEmpty() {
+            return firstEdge[1] == 0 && !terminal[ROOT];
+        }
+
+        private int child(int node, char c) {
+            int low = firstEdge[node];
+            int high = firstEdge[node + 1] - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                char middleChar = edgeChars[middle];
+                if (middleChar < c) {
+                    low = middle + 1;
+                } else if (middleChar > c) {
+                    high = middle - 1;
+                } else {
+                    return edgeTargets[middle];
+                }
+            }
+            return -1;
+        }
+
+        boolean matchesPrefix(String s) {
+            if (isEmpty()) {
+                return false;
+            }
+            int node = ROOT;
+            for (int i = 0; i < s.length(); i++) {
+                if (terminal[node]) {
+                    return true;
+                }
+                node = child(node, s.charAt(i));
+                if (node == -1) {
+                    return false;
+                }
+            }
+            return terminal[node];
+        }
+
+        boolean matchesReversedSuffix(String s) {
+            if (isEmpty()) {
+                return false;
+            }
+            int node = ROOT;
+            for (int i = s.length() - 1; i >= 0; i--) {
+                if (terminal[node]) {
+                    return true;
+                }
+                node = child(node, s.charAt(i));
+                if (node == -1) {
+                    return false;
+                }
+            }
+            return terminal[node];
+        }
+
+        boolean matchesSubstring(String s) {
+            if (isEmpty()) {
+                return false;
+            }
+            int node = ROOT;
+            if (terminal[node]) {
+                return true;
+            }
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                int next = child(node, c);
+                while (next == -1 && node != ROOT) {
+                    node = failure[node];
+                    next = child(node, c);
+                }
+                node = next == -1 ? ROOT : next;
+                if (terminal[node]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static final class Builder {
+            private final List<TreeMap<Character, Integer>> children = new ArrayList<>();
+            private final List<Boolean> terminal = new ArrayList<>();
+
+            Builder() {
+                newNode();
+            }
+
+            private int newNode() {
+                children.add(new TreeMap<>());
+                terminal.add(false);
+                return children.size() - 1;
+            }
+
+            void add(CharSequence pattern) {
+                int node = ROOT;
+                for (int i = 0; i < pattern.length(); i++) {
+                    Integer child = children.get(node).get(pattern.charAt(i));
+                    if (child == null) {
+                        child = newNode();
+                        children.get(node).put(pattern.charAt(i), child);
+                    }
+                    node = child;
+                }
+                terminal.set(node, true);
+            }
+
+            Trie build(boolean withFailureLinks) {
+                int nodeCount = children.size();
+                int[] firstEdge = new int[nodeCount + 1];
+                char[] edgeChars = new char[nodeCount - 1];
+                int[] edgeTargets = new int[nodeCount - 1];
+                boolean[] terminals = new boolean[nodeCount];
+                int edge = 0;
+                for (int node = 0; node < nodeCount; node++) {
+                    firstEdge[node] = edge;
+                    terminals[node] = terminal.get(node);
+                    for (Map.Entry<Character, Integer> entry : children.get(node).entrySet()) {
+                        edgeChars[edge] = entry.getKey();
+                        edgeTargets[edge] = entry.getValue();
+                        edge++;
+                    }
+                }
+                firstEdge[nodeCount] = edge;
+                Trie trie = new Trie(firstEdge, edgeChars, edgeTargets, terminals, withFailureLinks ? new int[nodeCount] : null);
+                if (withFailureLinks) {
+                    trie.computeFailureLinks(children);
+                }
+                return trie;
+            }
+        }
+
+        private void computeFailureLinks(List<TreeMap<Character, Integer>> children) {
+            // breadth-first, so that the failure link of a node is known before its children
+            Queue<Integer> queue = new ArrayDeque<>(children.get(ROOT).values());
+            while (!queue.isEmpty()) {
+                int node = queue.remove();
+                for (Map.Entry<Character, Integer> entry : children.get(node).entrySet()) {
+                    char c = entry.getKey();
+                    int child = entry.getValue();
+                    int fallback = failure[node];
+                    int target = child(fallback, c);
+                    while (target == -1 && fallback != ROOT) {
+                        fallback = failure[fallback];
+                        target = child(fallback, c);
+                    }
+                    failure[child] = target == -1 ? ROOT : target;
+                    terminal[child] |= terminal[failure[child]];
+                    queue.add(child);
+                }
+            }
+        }
+    }
+}
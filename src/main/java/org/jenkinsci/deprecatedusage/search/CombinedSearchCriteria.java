@@ -0,0 +1,239 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.deprecatedusage.search;
+
+import org.jenkinsci.deprecatedusage.Symbols;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Looks for what any of its members looks for.
+ * <p>
+ * The members are fused when it is built: the methods and fields looked for by the known kinds of criteria are merged
+ * into single lookup structures, and the answers about a class are memoized by class id. That way, the lookups done
+ * for each call instruction neither iterate over the members nor allocate.
+ */
+class CombinedSearchCriteria implements SearchCriteria {
+    private static final byte KNOWN = 1;
+    private static final byte LOOKING_FOR_CLASS = 2;
+    private static final byte SHOULD_ANALYZE_CLASS = 4;
+
+    List<SearchCriteria> searchCriteriaList;
+
+    private final BitSet methodIds = new BitSet();
+    private final BitSet fieldIds = new BitSet();
+    /**
+     * Methods looked for whatever their descriptor, as sorted pairs of class and method name ids
+     */
+    private final long[] methodClassAndNameIds;
+    /**
+     * Members whose methods and fields cannot be merged, asked one by one
+     */
+    private final SearchCriteria[] unfused;
+    private final boolean analyzeAllClasses;
+    /**
+     * Flags by class id, 0 until computed. Written without synchronization: a write lost when the array grows only
+     * means that the flags of the class are computed again.
+     */
+    private volatile byte[] classFlags = new byte[1024];
+
+    public CombinedSearchCriteria(List<SearchCriteria> searchCriteriaList) {
+        this.searchCriteriaList = searchCriteriaList;
+        Symbols symbols = Symbols.get();
+        Set<Long> classAndNameIds = new HashSet<>();
+        List<SearchCriteria> unfusedList = new ArrayList<>();
+        boolean analyzeAll = false;
+        for (SearchCriteria searchCriteria : searchCriteriaList) {
+            if (searchCriteria instanceof DeprecatedApiSearchCriteria) {
+                DeprecatedApiSearchCriteria deprecatedApiSearchCriteria = (DeprecatedApiSearchCriteria) searchCriteria;
+                methodIds.or(deprecatedApiSearchCriteria.getMethodIds());
+                fieldIds.or(deprecatedApiSearchCriteria.getFieldIds());
+                analyzeAll = true;
+            } else if (searchCriteria instanceof RecursiveSearchCriteria) {
+                methodIds.or(((RecursiveSearchCriteria) searchCriteria).getMethodIds());
+            } else if (searchCriteria instanceof OptionsBasedSearchCriteria) {
+                OptionsBasedSearchCriteria optionsBasedSearchCriteria = (OptionsBasedSearchCriteria) searchCriteria;
+                optionsBasedSearchCriteria.getMethodNamesByClass().forEach((className, methodNames) -> {
+                    for (String methodName : methodNames) {
+                        classAndNameIds.add(pair(symbols.intern(className), symbols.intern(methodName)));
+                    }
+                });
+                optionsBasedSearchCriteria.getFieldNamesByClass().forEach((className, fieldNames) -> {
+                    for (String fieldName : fieldNames) {
+                        fieldIds.set(symbols.field(className, fieldName));
+                    }
+                });
+            } else {
+                unfusedList.add(searchCriteria);
+            }
+        }
+        this.methodClassAndNameIds = classAndNameIds.stream().mapToLong(Long::longValue).sorted().toArray();
+        this.unfused = unfusedList.toArray(new SearchCriteria[0]);
+        this.analyzeAllClasses = analyzeAll;
+    }
+
+    public CombinedSearchCriteria(SearchCriteria... searchCriteriaList) {
+        this(Arrays.asList(searchCriteriaList));
+    }
+
+    private static long pair(int classId, int nameId) {
+        return ((long) classId << 32) | nameId;
+    }
+
+    @Override
+    public boolean isLookingForClass(String className) {
+        for (SearchCriteria searchCriteria : searchCriteriaList) {
+            if (searchCriteria.isLookingForClass(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isLookingForMethod(String methodKey, String className, String methodName) {
+        for (SearchCriteria searchCriteria : searchCriteriaList) {
+            if (searchCriteria.isLookingForMethod(methodKey, className, methodName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isLookingForField(String fieldKey, String className, String fieldName) {
+        for (SearchCriteria searchCriteria : searchCriteriaList) {
+            if (searchCriteria.isLookingForField(fieldKey, className, fieldName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean shouldAnalyzeClass(String className) {
+        if (analyzeAllClasses) {
+            return true;
+        }
+        for (SearchCriteria searchCriteria : searchCriteriaList) {
+            if (searchCriteria.shouldAnalyzeClass(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isLookingForClass(int classId) {
+        return (classFlags(classId) & LOOKING_FOR_CLASS) != 0;
+    }
+
+    @Override
+    public boolean isLookingForMethod(int methodId) {
+        if (methodIds.get(methodId)) {
+            return true;
+        }
+        if (methodClassAndNameIds.length > 0) {
+            Symbols symbols = Symbols.get();
+            if (Arrays.binarySearch(methodClassAndNameIds, pair(symbols.owner(methodId), symbols.name(methodId))) >= 0) {
+                return true;
+            }
+        }
+        for (SearchCriteria searchCriteria : unfused) {
+            if (searchCriteria.isLookingForMethod(methodId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isLookingForField(int fieldId) {
+        if (fieldIds.get(fieldId)) {
+            return true;
+        }
+        for (SearchCriteria searchCriteria : unfused) {
+            if (searchCriteria.isLookingForField(fieldId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean shouldAnalyzeClass(int classId) {
+        return analyzeAllClasses || (classFlags(classId) & SHOULD_ANALYZE_CLASS) != 0;
+    }
+
+    private byte classFlags(int classId) {
+        byte[] flags = classFlags;
+        if (classId < flags.length && flags[classId] != 0) {
+            return flags[classId];
+        }
+        byte computed = KNOWN;
+        for (SearchCriteria searchCriteria : searchCriteriaList) {
+            if (searchCriteria.isLookingForClass(classId)) {
+                computed |= LOOKING_FOR_CLASS;
+                break;
+            }
+        }
+        if (!analyzeAllClasses) {
+            for (SearchCriteria searchCriteria : searchCriteriaList) {
+                if (searchCriteria.shouldAnalyzeClass(classId)) {
+                    computed |= SHOULD_ANALYZE_CLASS;
+                    break;
+                }
+            }
+        }
+        if (classId >= flags.length) {
+            synchronized (this) {
+                flags = classFlags;
+                if (classId >= flags.length) {
+                    flags = Arrays.copyOf(flags, Math.max(flags.length * 2, classId + 1));
+                    classFlags = flags;
+                }
+            }
+        }
+        flags[classId] = computed;
+        return computed;
+    }
+
+    @Override
+    public Set<String> getTargetClassNames() {
+        Set<String> targetClassNames = new HashSet<>();
+        for (SearchCriteria searchCriteria : searchCriteriaList) {
+            Set<String> classNames = searchCriteria.getTargetClassNames();
+            if (classNames == null) {
+                return null;
+            }
+            targetClassNames.addAll(classNames);
+        }
+        return targetClassNames;
+    }
+}
@@ -24,9 +24,16 @@
 package org.jenkinsci.deprecatedusage.search;
 
 import org.jenkinsci.deprecatedusage.DeprecatedApi;
+import org.jenkinsci.deprecatedusage.Symbols;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
 
 public class DeprecatedApiSearchCriteria implements SearchCriteria {
     private DeprecatedApi deprecatedApi;
+    // ids of the classes, methods and fields of the api in Symbols, computed on first use
+    private volatile BitSet[] ids;
 
     public DeprecatedApiSearchCriteria(DeprecatedApi deprecatedApi) {
         this.deprecatedApi = deprecatedApi;
@@ -51,4 +58,69 @@ public class DeprecatedApiSearchCriteria implements SearchCriteria {
     public boolean shouldAnalyzeClass(String className) {
         return true;
     }
+
+    @Override
+    public boolean isLookingForClass(int classId) {
+        return ids()[0].get(classId);
+    }
+
+    @Override
+    public boolean isLookingForMethod(int methodId) {
+        return ids()[1].get(methodId);
+    }
+
+    @Override
+    public boolean isLookingForField(int fieldId) {
+        return ids()[2].get(fieldId);
+    }
+
+    @Override
+    public boolean shouldAnalyzeClass(int classId) {
+        return true;
+    }
+
+    BitSet getClassIds() {
+        return ids()[0];
+    }
+
+    BitSet getMethodIds() {
+        return ids()[1];
+    }
+
+    BitSet getFieldIds() {
+        return ids()[2];
+    }
+
+    private BitSet[] ids() {
+        BitSet[] result = ids;
+        if (result == null) {
+            synchronized (this) {
+                result = ids;
+                if (result == null) {
+                    Symbols symbols = Symbols.get();
+                    BitSet classIds = new BitSet();
+                    deprecatedApi.getClasses().forEach(className -> classIds.set(symbols.intern(className)));
+                    BitSet methodIds = new BitSet();
+                    deprecatedApi.getMethods().forEach(methodKey -> methodIds.set(symbols.parseKey(methodKey)));
+                    BitSet fieldIds = new BitSet();
+                    deprecatedApi.getFields().forEach(fieldKey -> fieldIds.set(symbols.parseKey(fieldKey)));
+                    result = new BitSet[] { classIds, methodIds, fieldIds };
+                    ids = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Set<String> getTargetClassNames() {
+        Set<String> targetClassNames = new HashSet<>(deprecatedApi.getClasses());
+        for (String method : deprecatedApi.getMethods()) {
+            targetClassNames.add(DeprecatedApi.extractClassNameFromKey(method));
+        }
+        for (String field : deprecatedApi.getFields()) {
+            targetClassNames.add(DeprecatedApi.extractClassNameFromKey(field));
+        }
+        return targetClassNames;
+    }
 }
@@ -25,11 +25,12 @@ package org.jenkinsci.deprecatedusage.search;
 
 import org.jenkinsci.deprecatedusage.DeprecatedUsage;
 import org.jenkinsci.deprecatedusage.Options;
+import org.jenkinsci.deprecatedusage.Symbols;
 
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Predicate;
 
@@ -77,6 +78,19 @@ public class OptionsBasedSearchCriteria implements SearchCriteria {
         return false;
     }
 
+    @Override
+    public boolean isLookingForMethod(int methodId) {
+        // the key is not needed
+        Symbols symbols = Symbols.get();
+        return isLookingForMethod(null, symbols.symbol(symbols.owner(methodId)), symbols.symbol(symbols.name(methodId)));
+    }
+
+    @Override
+    public boolean isLookingForField(int fieldId) {
+        Symbols symbols = Symbols.get();
+        return isLookingForField(null, symbols.symbol(symbols.owner(fieldId)), symbols.symbol(symbols.name(fieldId)));
+    }
+
     @Override
     public boolean shouldAnalyzeClass(String className) {
         // if an additionalClasses file is specified, and this matches, 
@@ -110,61 +124,44 @@ public class OptionsBasedSearchCriteria implements SearchCriteria {
         return true;
     }
     
-    private Predicate<String> convertToChecker(Collection<String> classNames) {
-        Set<String> exactMatch = new HashSet<>();
-        
-        // Could be optimized with some tree structure
-        List<String> startsWith = new ArrayList<>();
-        List<String> endsWith = new ArrayList<>();
-        List<String> contains = new ArrayList<>();
-
-        classNames.forEach(cn -> {
-            // careful, the star position is reversed compared to the behavior
-            // we want the string that startsWith Xxx, so the pattern will be Xxx* (star is at the end)
-            boolean isStartingWith = cn.endsWith("*");
-            boolean isEndingWith = cn.startsWith("*");
-            if (isStartingWith) {
-                if (isEndingWith) {
-                    contains.add(cn.substring(1, cn.length() - 2));
-                } else {
-                    startsWith.add(cn.substring(0, cn.length() - 1));
-                }
-            } else {
-                if (isEndingWith) {
-                    endsWith.add(cn.substring(1));
-                } else {
-                    exactMatch.add(cn);
-                }
-            }
-        });
+    /**
+     * Returns the names of the methods looked for, whatever their descriptor, by class name
+     */
+    Map<String, Set<String>> getMethodNamesByClass() {
+        return Options.get().additionalMethodsFile != null ? Options.getAdditionalMethodNames() : Collections.emptyMap();
+    }
 
-        List<Predicate<String>> predicates = new ArrayList<>();
+    /**
+     * Returns the names of the fields looked for, by class name
+     */
+    Map<String, Set<String>> getFieldNamesByClass() {
+        return Options.get().additionalFieldsFile != null ? Options.getAdditionalFields() : Collections.emptyMap();
+    }
 
-        // Filling the predicates when their corresponding list is not empty
-        if (!exactMatch.isEmpty()) {
-            predicates.add(exactMatch::contains);
-        }
-        if (!startsWith.isEmpty()) {
-            predicates.add(targetClassName -> startsWith.stream().anyMatch(targetClassName::startsWith));
+    @Override
+    public Set<String> getTargetClassNames() {
+        Options options = Options.get();
+        Set<String> targetClassNames = new HashSet<>();
+        if (options.additionalClassesFile != null) {
+            for (String className : Options.getAdditionalClasses()) {
+                if (className.startsWith("*") || className.endsWith("*")) {
+                    // patterns cannot be enumerated
+                    return null;
+                }
+                targetClassNames.add(className);
+            }
         }
-        if (!endsWith.isEmpty()) {
-            predicates.add(targetClassName -> endsWith.stream().anyMatch(targetClassName::endsWith));
+        // methods and fields are looked up by exact class name
+        if (options.additionalMethodsFile != null) {
+            targetClassNames.addAll(Options.getAdditionalMethodNames().keySet());
         }
-        if (!contains.isEmpty()) {
-            predicates.add(targetClassName -> contains.stream().anyMatch(targetClassName::contains));
+        if (options.additionalFieldsFile != null) {
+            targetClassNames.addAll(Options.getAdditionalFields().keySet());
         }
+        return targetClassNames;
+    }
 
-        // Combining the predicates together
-        if (predicates.isEmpty()) {
-            return s -> false;
-        } else if (predicates.size() == 1) {
-            return predicates.get(0);
-        } else {
-            Predicate<String> curr, first = curr = predicates.get(0);
-            for (int i = 1; i < predicates.size(); i++) {
-                curr = curr.or(predicates.get(i));
-            }
-            return first;
-        }
+    private Predicate<String> convertToChecker(Collection<String> classNames) {
+        return ClassNameMatcher.compile(classNames);
     }
 }
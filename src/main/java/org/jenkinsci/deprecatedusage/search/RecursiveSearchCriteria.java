@@ -24,13 +24,18 @@
 package org.jenkinsci.deprecatedusage.search;
 
 import org.jenkinsci.deprecatedusage.DeprecatedApi;
+import org.jenkinsci.deprecatedusage.Symbols;
 
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Set;
 
 public class RecursiveSearchCriteria implements SearchCriteria {
     private Set<String> methodKeys;
     private Set<String> relatedClasses;
+    // same as above, with the ids of Symbols
+    private final BitSet methodIds = new BitSet();
+    private final BitSet relatedClassIds = new BitSet();
 
     public RecursiveSearchCriteria(Set<String> methodKeys) {
         this.methodKeys = methodKeys;
@@ -39,6 +44,9 @@ public class RecursiveSearchCriteria implements SearchCriteria {
             String className = DeprecatedApi.extractClassNameFromKey(mk);
             relatedClasses.add(className);
         });
+        Symbols symbols = Symbols.get();
+        methodKeys.forEach(mk -> methodIds.set(symbols.parseKey(mk)));
+        relatedClasses.forEach(className -> relatedClassIds.set(symbols.intern(className)));
     }
 
     @Override
@@ -60,4 +68,33 @@ public class RecursiveSearchCriteria implements SearchCriteria {
     public boolean shouldAnalyzeClass(String className) {
         return relatedClasses.contains(className);
     }
+
+    @Override
+    public boolean isLookingForClass(int classId) {
+        return false;
+    }
+
+    @Override
+    public boolean isLookingForMethod(int methodId) {
+        return methodIds.get(methodId);
+    }
+
+    @Override
+    public boolean isLookingForField(int fieldId) {
+        return false;
+    }
+
+    @Override
+    public boolean shouldAnalyzeClass(int classId) {
+        return relatedClassIds.get(classId);
+    }
+
+    BitSet getMethodIds() {
+        return methodIds;
+    }
+
+    @Override
+    public Set<String> getTargetClassNames() {
+        return relatedClasses;
+    }
 }
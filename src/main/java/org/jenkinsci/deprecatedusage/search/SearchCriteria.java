@@ -23,9 +23,11 @@
  */
 package org.jenkinsci.deprecatedusage.search;
 
+import org.jenkinsci.deprecatedusage.Symbols;
+
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 
 public interface SearchCriteria {
     boolean isLookingForClass(String className);
@@ -43,6 +45,46 @@ public interface SearchCriteria {
 
     boolean shouldAnalyzeClass(String className);
 
+    /**
+     * Same as {@link #isLookingForClass(String)}, with the id of the class in {@link Symbols}
+     */
+    default boolean isLookingForClass(int classId) {
+        return isLookingForClass(Symbols.get().symbol(classId));
+    }
+
+    /**
+     * Same as {@link #isLookingForMethod(String, String, String)}, with the member id of the method in {@link Symbols}
+     */
+    default boolean isLookingForMethod(int methodId) {
+        Symbols symbols = Symbols.get();
+        return isLookingForMethod(symbols.key(methodId), symbols.symbol(symbols.owner(methodId)), symbols.symbol(symbols.name(methodId)));
+    }
+
+    /**
+     * Same as {@link #isLookingForField(String, String, String)}, with the member id of the field in {@link Symbols}
+     */
+    default boolean isLookingForField(int fieldId) {
+        Symbols symbols = Symbols.get();
+        return isLookingForField(symbols.key(fieldId), symbols.symbol(symbols.owner(fieldId)), symbols.symbol(symbols.name(fieldId)));
+    }
+
+    /**
+     * Same as {@link #shouldAnalyzeClass(String)}, with the id of the class in {@link Symbols}
+     */
+    default boolean shouldAnalyzeClass(int classId) {
+        return shouldAnalyzeClass(Symbols.get().symbol(classId));
+    }
+
+    /**
+     * Returns all the class names this criteria can be looking for, either as a class or as the owner of a method or
+     * a field. Classes referencing none of them can be skipped.
+     *
+     * @return the class names, or null if they cannot be enumerated (for patterns for example)
+     */
+    default Set<String> getTargetClassNames() {
+        return null;
+    }
+
     default SearchCriteria combineWith(SearchCriteria other) {
         List<SearchCriteria> list = new ArrayList<>();
 
@@ -59,35 +101,3 @@ public interface SearchCriteria {
         return new CombinedSearchCriteria(list);
     }
 }
-
-class CombinedSearchCriteria implements SearchCriteria {
-    List<SearchCriteria> searchCriteriaList;
-
-    public CombinedSearchCriteria(List<SearchCriteria> searchCriteriaList) {
-        this.searchCriteriaList = searchCriteriaList;
-    }
-
-    public CombinedSearchCriteria(SearchCriteria... searchCriteriaList) {
-        this.searchCriteriaList = Arrays.asList(searchCriteriaList);
-    }
-
-    @Override
-    public boolean isLookingForClass(String className) {
-        return searchCriteriaList.stream().anyMatch(sc -> sc.isLookingForClass(className));
-    }
-
-    @Override
-    public boolean isLookingForMethod(String methodKey, String className, String methodName) {
-        return searchCriteriaList.stream().anyMatch(sc -> sc.isLookingForMethod(methodKey, className, methodName));
-    }
-
-    @Override
-    public boolean isLookingForField(String fieldKey, String className, String methodName) {
-        return searchCriteriaList.stream().anyMatch(sc -> sc.isLookingForField(fieldKey, className, methodName));
-    }
-
-    @Override
-    public boolean shouldAnalyzeClass(String className) {
-        return searchCriteriaList.stream().anyMatch(sc -> sc.shouldAnalyzeClass(className));
-    }
-}
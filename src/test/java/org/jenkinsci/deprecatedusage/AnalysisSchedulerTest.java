@@ -0,0 +1,107 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AnalysisSchedulerTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void runsTheLargestFilesFirst() throws Exception {
+        AnalysisScheduler scheduler = new AnalysisScheduler(executor, 1, Long.MAX_VALUE);
+        CountDownLatch blocked = new CountDownLatch(1);
+        List<Long> order = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        futures.add(scheduler.submit(5, () -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return 5L;
+        }));
+        for (long size : new long[] {1, 30, 2, 20, 3}) {
+            futures.add(scheduler.submit(size, () -> {
+                order.add(size);
+                return size;
+            }));
+        }
+        blocked.countDown();
+        for (CompletableFuture<Long> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(Arrays.asList(30L, 20L, 3L, 2L, 1L), order);
+    }
+
+    @Test
+    public void boundsTheBytesInFlight() throws Exception {
+        AnalysisScheduler scheduler = new AnalysisScheduler(executor, 4, 100);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            // a single file is allowed even when larger than the bound
+            futures.add(scheduler.submit(i == 0 ? 200 : 60, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return running.decrementAndGet();
+            }));
+        }
+        for (CompletableFuture<Integer> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    public void chargesTheSubtasksOfRunningAnalyses() throws Exception {
+        AnalysisScheduler scheduler = new AnalysisScheduler(executor, 4, 100);
+        CountDownLatch reserved = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        CompletableFuture<Boolean> first = scheduler.submit(50, () -> {
+            boolean fits = scheduler.tryReserve(40);
+            // beyond the bound with the bytes already reserved, left to the analysis itself
+            boolean tooLarge = scheduler.tryReserve(20);
+            reserved.countDown();
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return fits && !tooLarge;
+        });
+        reserved.await(10, TimeUnit.SECONDS);
+        CompletableFuture<Integer> second = scheduler.submit(30, () -> 30);
+        // waits for the room reserved by the subtask
+        Thread.sleep(50);
+        assertFalse(second.isDone());
+        scheduler.release(40);
+        assertEquals(30, (int) second.get(10, TimeUnit.SECONDS));
+        done.countDown();
+        assertTrue(first.get(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,647 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.jenkinsci.deprecatedusage.search.DeprecatedApiSearchCriteria;
+import org.jenkinsci.deprecatedusage.search.OptionsBasedSearchCriteria;
+import org.jenkinsci.deprecatedusage.search.SearchCriteria;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeprecatedUsageTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * APIs of the core built by {@link #createCore()}, and the criteria looking for them
+     */
+    private DeprecatedApi api;
+    private SearchCriteria criteria;
+
+    @Before
+    public void analyzeCore() throws IOException {
+        api = new DeprecatedApi();
+        api.analyze(createCore());
+        criteria = new OptionsBasedSearchCriteria().combineWith(new DeprecatedApiSearchCriteria(api));
+    }
+
+    @Test
+    public void findsInheritedAndDirectUsages() throws IOException {
+        assertEquals(Collections.singleton("hudson/model/Api#old()V"), api.getMethods());
+        assertEquals(Collections.singleton("hudson/model/Api#OLD"), api.getFields());
+        assertEquals(Collections.singleton("hudson/model/OldThing"), api.getClasses());
+
+        DeprecatedUsage usage = new DeprecatedUsage("acme", "1.0", criteria, false);
+        usage.analyze(createPlugin());
+
+        assertEquals(Collections.singleton("hudson/model/OldThing"), usage.getClasses());
+        assertEquals(Collections.singleton("hudson/model/Api#old()V"), usage.getMethods());
+        assertEquals(Collections.singleton("hudson/model/Api#OLD"), usage.getFields());
+        assertEquals(new TreeSet<>(Arrays.asList("org/acme/Caller#run()V", "org/acme/Indirect#go(Lorg/acme/Sub;)V")),
+                new TreeSet<>(usage.getProviderToConsumers().get("hudson/model/Api#old()V")));
+        assertEquals(new TreeSet<>(Arrays.asList("hudson/model/Api#old()V", "hudson/model/Api#OLD", "hudson/model/OldThing#<init>()V")),
+                new TreeSet<>(usage.getConsumerToProviders().get("org/acme/Caller#run()V")));
+        assertTrue(usage.hasDeprecatedUsage());
+    }
+
+    @Test
+    public void skipsClassesReferencingNoSearchedClass() throws IOException {
+        Map<String, byte[]> classes = createPluginClasses();
+        ClassWriter unrelated = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        unrelated.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "org/acme/Unrelated", null, "java/lang/Object", null);
+        MethodVisitor run = unrelated.visitMethod(Opcodes.ACC_PUBLIC, "run", "()V", null, null);
+        run.visitCode();
+        run.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/System", "gc", "()V", false);
+        run.visitInsn(Opcodes.RETURN);
+        run.visitMaxs(0, 0);
+        run.visitEnd();
+        unrelated.visitEnd();
+        classes.put("org/acme/Unrelated.class", unrelated.toByteArray());
+        File hpi = tmp.newFile("acme.hpi");
+        writeWar(hpi, "WEB-INF/lib/acme.jar", classes);
+
+        DeprecatedUsage usage = new DeprecatedUsage("acme", "1.0", criteria, false);
+        usage.analyze(hpi);
+
+        // Indirect is skipped at first, then read again once Sub is known to be a subclass of Api
+        assertEquals(3, usage.getVisitedClassCount());
+        assertEquals(Collections.singleton("hudson/model/Api#old()V"), usage.getMethods());
+        assertEquals(new TreeSet<>(Arrays.asList("org/acme/Caller#run()V", "org/acme/Indirect#go(Lorg/acme/Sub;)V")),
+                new TreeSet<>(usage.getProviderToConsumers().get("hudson/model/Api#old()V")));
+    }
+
+    @Test
+    public void readsCoresInParallel() throws Exception {
+        List<File> cores = new ArrayList<>();
+        for (int core = 0; core < 2; core++) {
+            Map<String, byte[]> classes = new LinkedHashMap<>();
+            // several batches of classes, some of them in both cores
+            for (int i = core * 1000; i < 2000 + core * 1000; i++) {
+                ClassWriter writer = new ClassWriter(0);
+                writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | (i % 7 == 0 ? Opcodes.ACC_DEPRECATED : 0), "hudson/model/C" + i,
+                        null, core == 0 ? "java/lang/Object" : "hudson/model/C0", null);
+                writer.visitMethod(Opcodes.ACC_PUBLIC | (i % 3 == 0 ? Opcodes.ACC_DEPRECATED : 0), "m" + i, "()V", null, null).visitEnd();
+                writer.visitField(Opcodes.ACC_PUBLIC | (i % 5 == 0 ? Opcodes.ACC_DEPRECATED : 0), "f" + i, "I", null, null).visitEnd();
+                writer.visitEnd();
+                classes.put("hudson/model/C" + i + ".class", writer.toByteArray());
+            }
+            File war = tmp.newFile("jenkins-" + core + ".war");
+            writeWar(war, "WEB-INF/lib/jenkins-core.jar", classes);
+            cores.add(war);
+        }
+
+        DeprecatedApi sequential = new DeprecatedApi();
+        for (File core : cores) {
+            sequential.analyze(core);
+        }
+        ExecutorService ioExecutor = Executors.newFixedThreadPool(2);
+        ExecutorService executor = Executors.newWorkStealingPool(4);
+        try {
+            List<CompletableFuture<DeprecatedApi.CoreApi>> coreApis = new ArrayList<>();
+            for (File core : cores) {
+                coreApis.add(DeprecatedApi.read(core, ioExecutor, executor));
+            }
+            DeprecatedApi parallel = new DeprecatedApi();
+            for (CompletableFuture<DeprecatedApi.CoreApi> coreApi : coreApis) {
+                parallel.add(coreApi.get(1, TimeUnit.MINUTES));
+            }
+            assertEquals(sequential.getClasses(), parallel.getClasses());
+            assertEquals(sequential.getMethods(), parallel.getMethods());
+            assertEquals(sequential.getFields(), parallel.getFields());
+            // the classes defined by both cores keep the hierarchy of the first one
+            int inBoth = Symbols.get().intern("hudson/model/C1500");
+            assertArrayEquals(new int[0], parallel.getClassHierarchy().getSuperClassAndInterfaces(inBoth));
+            assertArrayEquals(sequential.getClassHierarchy().getSuperClassAndInterfaces(inBoth), parallel.getClassHierarchy().getSuperClassAndInterfaces(inBoth));
+        } finally {
+            ioExecutor.shutdownNow();
+            executor.shutdownNow();
+        }
+        assertEquals(3000 / 7 + 1, sequential.getClasses().size());
+    }
+
+    @Test
+    public void resolvesEachCalledMemberOnce() throws IOException {
+        AtomicInteger lookups = new AtomicInteger();
+        SearchCriteria countingCriteria = new SearchCriteria() {
+            @Override
+            public boolean isLookingForClass(String className) {
+                return false;
+            }
+
+            @Override
+            public boolean isLookingForMethod(String methodKey, String className, String methodName) {
+                lookups.incrementAndGet();
+                return methodKey.equals("hudson/model/Api#old()V");
+            }
+
+            @Override
+            public boolean isLookingForField(String fieldKey, String className, String fieldName) {
+                return false;
+            }
+
+            @Override
+            public boolean shouldAnalyzeClass(String className) {
+                return true;
+            }
+        };
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        ClassWriter caller = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        caller.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "org/acme/Caller", null, "java/lang/Object", null);
+        for (String name : Arrays.asList("a", "b")) {
+            MethodVisitor method = caller.visitMethod(Opcodes.ACC_PUBLIC, name, "(Lorg/acme/Sub;)V", null, null);
+            method.visitCode();
+            for (String called : Arrays.asList("old", "old", "current")) {
+                method.visitVarInsn(Opcodes.ALOAD, 1);
+                method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "org/acme/Sub", called, "()V", false);
+            }
+            method.visitInsn(Opcodes.RETURN);
+            method.visitMaxs(0, 0);
+            method.visitEnd();
+        }
+        caller.visitEnd();
+        classes.put("org/acme/Caller.class", caller.toByteArray());
+        ClassWriter sub = new ClassWriter(0);
+        sub.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "org/acme/Sub", null, "hudson/model/Api", null);
+        sub.visitEnd();
+        classes.put("org/acme/Sub.class", sub.toByteArray());
+        File hpi = tmp.newFile("acme.hpi");
+        writeWar(hpi, "WEB-INF/lib/acme.jar", classes);
+
+        DeprecatedUsage usage = new DeprecatedUsage("acme", "1.0", countingCriteria, false);
+        usage.analyze(hpi);
+
+        // Sub#old()V and Sub#current()V, each looked for in Sub and Api, whatever the number of calls
+        assertEquals(4, lookups.get());
+        assertEquals(Collections.singleton("hudson/model/Api#old()V"), usage.getMethods());
+        assertEquals(new TreeSet<>(Arrays.asList("org/acme/Caller#a(Lorg/acme/Sub;)V", "org/acme/Caller#b(Lorg/acme/Sub;)V")),
+                new TreeSet<>(usage.getProviderToConsumers().get("hudson/model/Api#old()V")));
+    }
+
+    @Test
+    public void findsSameUsagesFromConstantPoolsWithoutCallers() throws IOException {
+        File hpi = createPlugin();
+        DeprecatedUsage walked = new DeprecatedUsage("acme", "1.0", criteria, false);
+        walked.analyze(hpi);
+        DeprecatedUsage fast = new DeprecatedUsage("acme", "1.0", criteria, false);
+        fast.setRecordCallers(false);
+        fast.analyze(hpi);
+
+        assertEquals(walked.getClasses(), fast.getClasses());
+        assertEquals(walked.getMethods(), fast.getMethods());
+        assertEquals(walked.getFields(), fast.getFields());
+        assertTrue(fast.getProviderToConsumers().isEmpty());
+        assertTrue(fast.hasDeprecatedUsage());
+    }
+
+    @Test
+    public void findsMethodReferencesFromConstantPoolsWithoutCallers() throws IOException {
+        // Runnable of(Api api) { return api::old; }
+        ClassWriter lambdas = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        lambdas.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "org/acme/Lambdas", null, "java/lang/Object", null);
+        MethodVisitor of = lambdas.visitMethod(Opcodes.ACC_PUBLIC, "of", "(Lhudson/model/Api;)Ljava/lang/Runnable;", null, null);
+        of.visitCode();
+        of.visitVarInsn(Opcodes.ALOAD, 1);
+        of.visitInvokeDynamicInsn("run", "(Lhudson/model/Api;)Ljava/lang/Runnable;",
+                new Handle(Opcodes.H_INVOKESTATIC, "java/lang/invoke/LambdaMetafactory", "metafactory",
+                        "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;"
+                                + "Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;)"
+                                + "Ljava/lang/invoke/CallSite;", false),
+                Type.getType("()V"), new Handle(Opcodes.H_INVOKEVIRTUAL, "hudson/model/Api", "old", "()V", false),
+                Type.getType("()V"));
+        of.visitInsn(Opcodes.ARETURN);
+        of.visitMaxs(0, 0);
+        of.visitEnd();
+        lambdas.visitEnd();
+        File hpi = tmp.newFile("acme.hpi");
+        writeWar(hpi, "WEB-INF/lib/acme.jar", Collections.singletonMap("org/acme/Lambdas.class", lambdas.toByteArray()));
+
+        DeprecatedUsage walked = new DeprecatedUsage("acme", "1.0", criteria, false);
+        walked.analyze(hpi);
+        DeprecatedUsage fast = new DeprecatedUsage("acme", "1.0", criteria, false);
+        fast.setRecordCallers(false);
+        fast.analyze(hpi);
+
+        // the method reference is found both ways, the bootstrap method is not a searched one
+        assertEquals(Collections.singleton("hudson/model/Api#old()V"), walked.getMethods());
+        assertEquals(Collections.singleton("org/acme/Lambdas#of(Lhudson/model/Api;)Ljava/lang/Runnable;"),
+                walked.getProviderToConsumers().get("hudson/model/Api#old()V"));
+        assertEquals(walked.getMethods(), fast.getMethods());
+        assertTrue(fast.getProviderToConsumers().isEmpty());
+    }
+
+    @Test
+    public void readsLibraryJarsBundledBySeveralPluginsOnce() throws IOException {
+        byte[] library = writeJar(createPluginClasses());
+        SharedLibraries sharedLibraries = new SharedLibraries();
+
+        DeprecatedUsage first = null;
+        for (String name : Arrays.asList("first", "second")) {
+            File hpi = tmp.newFile(name + ".hpi");
+            Map<String, byte[]> jars = new LinkedHashMap<>();
+            jars.put("WEB-INF/lib/" + name + ".jar", writeJar(Collections.emptyMap()));
+            jars.put("WEB-INF/lib/acme-library-1.0.jar", library);
+            writeWar(hpi, jars);
+
+            DeprecatedUsage usage = new DeprecatedUsage(name, "1.0", criteria, true);
+            usage.setSharedLibraries(sharedLibraries);
+            usage.analyze(hpi);
+            assertEquals(Collections.singleton("hudson/model/OldThing"), usage.getClasses());
+            assertEquals(Collections.singleton("hudson/model/Api#old()V"), usage.getMethods());
+            assertEquals(Collections.singleton("hudson/model/Api#OLD"), usage.getFields());
+            if (first == null) {
+                first = usage;
+            } else {
+                assertEquals(first.getProviderToConsumers(), usage.getProviderToConsumers());
+            }
+        }
+        assertEquals(1, sharedLibraries.getReadCount());
+        assertEquals(1, sharedLibraries.getReusedCount());
+    }
+
+    @Test
+    public void readsLibraryJarsInParallelWithSameResults() throws IOException {
+        // the classes are spread over the jar of the plugin and two library jars
+        Map<String, byte[]> jars = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> entry : createPluginClasses().entrySet()) {
+            String fileName = entry.getKey();
+            String jarName = fileName.contains("Caller") ? "acme.jar" : fileName.replaceAll(".*/|\\.class", "") + "-1.0.jar";
+            jars.put("WEB-INF/lib/" + jarName, writeJar(Collections.singletonMap(fileName, entry.getValue())));
+        }
+        File hpi = tmp.newFile("acme.hpi");
+        writeWar(hpi, jars);
+
+        DeprecatedUsage sequential = new DeprecatedUsage("acme", "1.0", criteria, true);
+        sequential.analyze(hpi);
+        for (SharedLibraries sharedLibraries : Arrays.asList(null, new SharedLibraries())) {
+            DeprecatedUsage parallel = new DeprecatedUsage("acme", "1.0", criteria, true);
+            parallel.setParallelLibraries(true);
+            parallel.setSharedLibraries(sharedLibraries);
+            parallel.analyze(hpi);
+            assertEquals(sequential.getClasses(), parallel.getClasses());
+            assertEquals(sequential.getMethods(), parallel.getMethods());
+            assertEquals(sequential.getFields(), parallel.getFields());
+            assertEquals(sequential.getProviderToConsumers(), parallel.getProviderToConsumers());
+            assertEquals(sequential.getConsumerToProviders(), parallel.getConsumerToProviders());
+        }
+        // no room for the subtasks: the library jars are read by the analysis itself
+        DeprecatedUsage bounded = new DeprecatedUsage("acme", "1.0", criteria, true);
+        bounded.setParallelLibraries(true);
+        bounded.setAnalysisScheduler(new AnalysisScheduler(Runnable::run, 1, 0));
+        bounded.analyze(hpi);
+        assertEquals(sequential.getMethods(), bounded.getMethods());
+        assertEquals(sequential.getProviderToConsumers(), bounded.getProviderToConsumers());
+        assertEquals(new TreeSet<>(Arrays.asList("org/acme/Caller#run()V", "org/acme/Indirect#go(Lorg/acme/Sub;)V")),
+                new TreeSet<>(sequential.getProviderToConsumers().get("hudson/model/Api#old()V")));
+    }
+
+    @Test
+    public void reusesFactsOfIdenticalClassFiles() throws IOException {
+        ClassFactsStore store = new ClassFactsStore();
+
+        DeprecatedUsage first = new DeprecatedUsage("acme", "1.0", criteria, false);
+        first.setClassFactsStore(store);
+        first.analyze(createPlugin());
+        assertEquals(0, store.getHitCount());
+
+        File copy = tmp.newFile("copy.hpi");
+        writeWar(copy, "WEB-INF/lib/copy.jar", createPluginClasses());
+        DeprecatedUsage second = new DeprecatedUsage("copy", "1.0", criteria, false);
+        second.setClassFactsStore(store);
+        second.analyze(copy);
+        assertEquals(3, store.getHitCount());
+        assertEquals(first.getMethods(), second.getMethods());
+        assertEquals(first.getFields(), second.getFields());
+        assertEquals(first.getProviderToConsumers(), second.getProviderToConsumers());
+    }
+
+    @Test
+    public void storesFactsOfClassFilesReadWithoutCriteria() throws IOException {
+        File directory = tmp.newFolder("scan-cache");
+        ScanCache scanCache = new ScanCache(directory.toPath());
+
+        File hpi = createPlugin();
+        JenkinsFile jenkinsFile = new JenkinsFile("acme", "1.0", "https://example.org/acme.hpi", null,
+                DigestUtils.getSha256Digest(), DigestUtils.sha256(Files.readAllBytes(hpi.toPath())));
+        jenkinsFile.setFile(hpi);
+        DeprecatedUsage usage = new DeprecatedUsage("acme", "1.0", criteria, false);
+        usage.setClassFactsStore(scanCache.getClassFactsStore());
+        usage.analyze(jenkinsFile, scanCache);
+        scanCache.storeClassFacts();
+
+        assertEquals(3, new ScanCache(directory.toPath()).getClassFactsStore().size());
+    }
+
+    @Test
+    public void reusesCachedFactsWithoutReadingThePlugin() throws IOException {
+        ScanCache scanCache = new ScanCache(tmp.newFolder("scan-cache").toPath());
+
+        File hpi = createPlugin();
+        JenkinsFile jenkinsFile = new JenkinsFile("acme", "1.0", "https://example.org/acme.hpi", null,
+                DigestUtils.getSha256Digest(), DigestUtils.sha256(Files.readAllBytes(hpi.toPath())));
+        jenkinsFile.setFile(hpi);
+        DeprecatedUsage scanned = new DeprecatedUsage("acme", "1.0", criteria, false);
+        scanned.analyze(jenkinsFile, scanCache);
+
+        assertTrue(hpi.delete());
+        DeprecatedUsage cached = new DeprecatedUsage("acme", "1.0", criteria, false);
+        cached.analyze(jenkinsFile, scanCache);
+
+        assertEquals(Collections.singleton("hudson/model/OldThing"), cached.getClasses());
+        assertEquals(scanned.getClasses(), cached.getClasses());
+        assertEquals(scanned.getMethods(), cached.getMethods());
+        assertEquals(scanned.getFields(), cached.getFields());
+        assertEquals(scanned.getProviderToConsumers(), cached.getProviderToConsumers());
+    }
+
+    @Test
+    public void resolvesMembersInheritedFromClassesOfOtherPlugins() throws IOException {
+        ClassHierarchy coreClasses = api.getClassHierarchy();
+
+        DeprecatedUsage base = new DeprecatedUsage("base", "1.0", criteria, false, coreClasses);
+        base.analyze(createBasePlugin());
+        DeprecatedUsage other = new DeprecatedUsage("other", "1.0", criteria, false, coreClasses);
+        other.analyze(createOtherPlugin());
+        // org/base/Mid is not known yet
+        assertEquals(Collections.singleton("hudson/model/Api#OLD"), other.getFields());
+        assertEquals(Collections.emptySet(), other.getMethods());
+
+        ClassHierarchy allClasses = coreClasses.with(Arrays.asList(base.getDefinedClasses(), other.getDefinedClasses()));
+        base.resolvePendingCalls(allClasses);
+        other.resolvePendingCalls(allClasses);
+
+        assertEquals(Collections.singleton("hudson/model/Api#old()V"), other.getMethods());
+        // User only references org/base/Mid, it is read again once known
+        assertEquals(new TreeSet<>(Arrays.asList("org/other/Both#run()V", "org/other/User#use(Lorg/base/Mid;)V")),
+                new TreeSet<>(other.getProviderToConsumers().get("hudson/model/Api#old()V")));
+        assertEquals(Collections.emptySet(), base.getMethods());
+    }
+
+    @Test
+    public void resolvesWithItsOwnClassesFirst() throws IOException {
+        ClassHierarchy coreClasses = api.getClassHierarchy();
+
+        // org/lib/Base is defined by two plugins, the one of alpha comes first in the hierarchy of all plugins
+        ClassWriter alphaBase = new ClassWriter(0);
+        alphaBase.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "org/lib/Base", null, "java/lang/Object", null);
+        alphaBase.visitEnd();
+        File alphaFile = tmp.newFile("alpha.hpi");
+        writeWar(alphaFile, "WEB-INF/lib/alpha.jar", Collections.singletonMap("org/lib/Base.class", alphaBase.toByteArray()));
+        ClassWriter mid = new ClassWriter(0);
+        mid.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "org/lib/Mid", null, "org/lib/Base", null);
+        mid.visitEnd();
+        File libFile = tmp.newFile("lib.hpi");
+        writeWar(libFile, "WEB-INF/lib/lib.jar", Collections.singletonMap("org/lib/Mid.class", mid.toByteArray()));
+
+        Map<String, byte[]> zetaClasses = new LinkedHashMap<>();
+        ClassWriter zetaBase = new ClassWriter(0);
+        zetaBase.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "org/lib/Base", null, "hudson/model/Api", null);
+        zetaBase.visitEnd();
+        zetaClasses.put("org/lib/Base.class", zetaBase.toByteArray());
+        // inherits the deprecated method from a known class, and may inherit more from an unknown interface
+        ClassWriter own = new ClassWriter(0);
+        own.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "org/zeta/Own", null, "hudson/model/Api", new String[] {"org/lib/Missing"});
+        own.visitEnd();
+        zetaClasses.put("org/zeta/Own.class", own.toByteArray());
+        ClassWriter caller = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        caller.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "org/zeta/Caller", null, "java/lang/Object", null);
+        MethodVisitor run = caller.visitMethod(Opcodes.ACC_PUBLIC, "run", "(Lorg/zeta/Own;Lorg/lib/Mid;)V", null, null);
+        run.visitCode();
+        run.visitVarInsn(Opcodes.ALOAD, 1);
+        run.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "org/zeta/Own", "old", "()V", false);
+        run.visitVarInsn(Opcodes.ALOAD, 2);
+        run.visitFieldInsn(Opcodes.GETFIELD, "org/lib/Mid", "OLD", "I");
+        run.visitInsn(Opcodes.POP);
+        run.visitInsn(Opcodes.RETURN);
+        run.visitMaxs(0, 0);
+        run.visitEnd();
+        caller.visitEnd();
+        zetaClasses.put("org/zeta/Caller.class", caller.toByteArray());
+        File zetaFile = tmp.newFile("zeta.hpi");
+        writeWar(zetaFile, "WEB-INF/lib/zeta.jar", zetaClasses);
+
+        List<DeprecatedUsage> usages = new ArrayList<>();
+        for (File file : Arrays.asList(alphaFile, libFile, zetaFile)) {
+            DeprecatedUsage usage = new DeprecatedUsage(file.getName(), "1.0", criteria, false, coreClasses);
+            usage.analyze(file);
+            usages.add(usage);
+        }
+        DeprecatedUsage zeta = usages.get(2);
+        // resolved without waiting for the classes of the other plugins
+        assertEquals(Collections.singleton("hudson/model/Api#old()V"), zeta.getMethods());
+        assertEquals(Collections.emptySet(), zeta.getFields());
+
+        List<Map<Integer, int[]>> definedClasses = new ArrayList<>();
+        for (DeprecatedUsage usage : usages) {
+            definedClasses.add(usage.getDefinedClasses());
+        }
+        ClassHierarchy allClasses = coreClasses.with(definedClasses);
+        for (DeprecatedUsage usage : usages) {
+            usage.resolvePendingCalls(allClasses);
+        }
+        // org/lib/Mid extends the org/lib/Base of zeta, and so hudson/model/Api
+        assertEquals(Collections.singleton("hudson/model/Api#OLD"), zeta.getFields());
+        assertEquals(Collections.singleton("org/zeta/Caller#run(Lorg/zeta/Own;Lorg/lib/Mid;)V"),
+                zeta.getProviderToConsumers().get("hudson/model/Api#OLD"));
+    }
+
+    @Test
+    public void reusesResultsWithTheClassesOfUnchangedPlugins() throws IOException {
+        ClassHierarchy coreClasses = api.getClassHierarchy();
+        File baseFile = createBasePlugin();
+        File otherFile = createOtherPlugin();
+
+        DeprecatedUsage base = new DeprecatedUsage("base", "1.0", criteria, false, coreClasses);
+        base.setKeepHierarchy(true);
+        base.analyze(baseFile);
+        DeprecatedUsage other = new DeprecatedUsage("other", "1.0", criteria, false, coreClasses);
+        other.setKeepHierarchy(true);
+        other.analyze(otherFile);
+        ClassHierarchy allClasses = coreClasses.with(Arrays.asList(base.getDefinedClasses(), other.getDefinedClasses()));
+        base.resolvePendingCalls(allClasses);
+        other.resolvePendingCalls(allClasses);
+        ScanManifest manifest = new ScanManifest(new File(tmp.getRoot(), "scan-manifest.json"), "criteria");
+        manifest.write(Arrays.asList(base, other));
+        Map<String, DeprecatedUsage> previousUsages = manifest.load(criteria);
+
+        // other is updated: its calls are resolved with the classes of the previous base
+        DeprecatedUsage previousBase = previousUsages.get("base:1.0");
+        DeprecatedUsage updatedOther = new DeprecatedUsage("other", "1.0", criteria, false, coreClasses);
+        updatedOther.analyze(otherFile);
+        allClasses = coreClasses.with(Arrays.asList(previousBase.getDefinedClasses(), updatedOther.getDefinedClasses()));
+        updatedOther.resolvePendingCalls(allClasses);
+        assertEquals(other.getMethods(), updatedOther.getMethods());
+        assertEquals(other.getProviderToConsumers(), updatedOther.getProviderToConsumers());
+
+        // other is unchanged, its results are only valid while org/base/Mid has the same ancestors
+        DeprecatedUsage previousOther = previousUsages.get("other:1.0");
+        assertTrue(previousOther.isResolvedSameWay(allClasses));
+        assertFalse(previousOther.isResolvedSameWay(coreClasses.with(Collections.singletonList(previousOther.getDefinedClasses()))));
+    }
+
+    private File createCore() throws IOException {
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        ClassWriter api = new ClassWriter(0);
+        api.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "hudson/model/Api", null, "java/lang/Object", null);
+        api.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_DEPRECATED, "OLD", "I", null, null).visitEnd();
+        api.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_DEPRECATED, "old", "()V", null, null).visitEnd();
+        api.visitMethod(Opcodes.ACC_PUBLIC, "current", "()V", null, null).visitEnd();
+        api.visitEnd();
+        classes.put("hudson/model/Api.class", api.toByteArray());
+
+        ClassWriter oldThing = new ClassWriter(0);
+        oldThing.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_DEPRECATED, "hudson/model/OldThing", null, "java/lang/Object", null);
+        oldThing.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null).visitEnd();
+        oldThing.visitEnd();
+        classes.put("hudson/model/OldThing.class", oldThing.toByteArray());
+
+        File war = tmp.newFile("jenkins.war");
+        writeWar(war, "WEB-INF/lib/jenkins-core.jar", classes);
+        return war;
+    }
+
+    private File createPlugin() throws IOException {
+        File hpi = tmp.newFile("acme.hpi");
+        writeWar(hpi, "WEB-INF/lib/acme.jar", createPluginClasses());
+        return hpi;
+    }
+
+    private Map<String, byte[]> createPluginClasses() {
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        // the caller comes first so that the hierarchy of Sub is not known yet when its calls are read
+        ClassWriter caller = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        caller.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "org/acme/Caller", null, "java/lang/Object", null);
+        MethodVisitor run = caller.visitMethod(Opcodes.ACC_PUBLIC, "run", "()V", null, null);
+        run.visitCode();
+        run.visitTypeInsn(Opcodes.NEW, "org/acme/Sub");
+        run.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "org/acme/Sub", "old", "()V", false);
+        run.visitFieldInsn(Opcodes.GETSTATIC, "hudson/model/Api", "OLD", "I");
+        run.visitInsn(Opcodes.POP);
+        run.visitTypeInsn(Opcodes.NEW, "hudson/model/OldThing");
+        run.visitMethodInsn(Opcodes.INVOKESPECIAL, "hudson/model/OldThing", "<init>", "()V", false);
+        run.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "org/acme/Sub", "current", "()V", false);
+        run.visitInsn(Opcodes.RETURN);
+        run.visitMaxs(0, 0);
+        run.visitEnd();
+        caller.visitEnd();
+        classes.put("org/acme/Caller.class", caller.toByteArray());
+
+        // only references a class of the plugin, which inherits the deprecated method
+        ClassWriter indirect = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        indirect.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "org/acme/Indirect", null, "java/lang/Object", null);
+        MethodVisitor go = indirect.visitMethod(Opcodes.ACC_PUBLIC, "go", "(Lorg/acme/Sub;)V", null, null);
+        go.visitCode();
+        go.visitVarInsn(Opcodes.ALOAD, 1);
+        go.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "org/acme/Sub", "old", "()V", false);
+        go.visitInsn(Opcodes.RETURN);
+        go.visitMaxs(0, 0);
+        go.visitEnd();
+        indirect.visitEnd();
+        classes.put("org/acme/Indirect.class", indirect.toByteArray());
+
+        ClassWriter sub = new ClassWriter(0);
+        sub.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "org/acme/Sub", null, "hudson/model/Api", null);
+        sub.visitEnd();
+        classes.put("org/acme/Sub.class", sub.toByteArray());
+        return classes;
+    }
+
+    private File createBasePlugin() throws IOException {
+        ClassWriter mid = new ClassWriter(0);
+        mid.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "org/base/Mid", null, "hudson/model/Api", null);
+        mid.visitEnd();
+
+        File hpi = tmp.newFile("base.hpi");
+        writeWar(hpi, "WEB-INF/lib/base.jar", Collections.singletonMap("org/base/Mid.class", mid.toByteArray()));
+        return hpi;
+    }
+
+    private File createOtherPlugin() throws IOException {
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        ClassWriter both = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        both.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "org/other/Both", null, "java/lang/Object", null);
+        MethodVisitor run = both.visitMethod(Opcodes.ACC_PUBLIC, "run", "()V", null, null);
+        run.visitCode();
+        run.visitFieldInsn(Opcodes.GETSTATIC, "hudson/model/Api", "OLD", "I");
+        run.visitInsn(Opcodes.POP);
+        run.visitInsn(Opcodes.ACONST_NULL);
+        run.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "org/base/Mid", "old", "()V", false);
+        run.visitInsn(Opcodes.RETURN);
+        run.visitMaxs(0, 0);
+        run.visitEnd();
+        both.visitEnd();
+        classes.put("org/other/Both.class", both.toByteArray());
+
+        ClassWriter user = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        user.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "org/other/User", null, "java/lang/Object", null);
+        MethodVisitor use = user.visitMethod(Opcodes.ACC_PUBLIC, "use", "(Lorg/base/Mid;)V", null, null);
+        use.visitCode();
+        use.visitVarInsn(Opcodes.ALOAD, 1);
+        use.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "org/base/Mid", "old", "()V", false);
+        use.visitInsn(Opcodes.RETURN);
+        use.visitMaxs(0, 0);
+        use.visitEnd();
+        user.visitEnd();
+        classes.put("org/other/User.class", user.toByteArray());
+
+        File hpi = tmp.newFile("other.hpi");
+        writeWar(hpi, "WEB-INF/lib/other.jar", classes);
+        return hpi;
+    }
+
+    private static void writeWar(File war, String jarName, Map<String, byte[]> classes) throws IOException {
+        writeWar(war, Collections.singletonMap(jarName, writeJar(classes)));
+    }
+
+    private static void writeWar(File war, Map<String, byte[]> jars) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(war))) {
+            for (Map.Entry<String, byte[]> jar : jars.entrySet()) {
+                out.putNextEntry(new ZipEntry(jar.getKey()));
+                out.write(jar.getValue());
+            }
+        }
+    }
+
+    private static byte[] writeJar(Map<String, byte[]> classes) throws IOException {
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(jar)) {
+            out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            out.write("Manifest-Version: 1.0\n".getBytes("UTF-8"));
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+            }
+        }
+        return jar.toByteArray();
+    }
+}
@@ -0,0 +1,88 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DownloadLimitTest {
+    @Test
+    public void fixedLimit() {
+        DownloadLimit limit = new DownloadLimit(2, false);
+        assertTrue(limit.tryAcquire() >= 0);
+        long second = limit.tryAcquire();
+        assertTrue(second >= 0);
+        assertEquals(-1, limit.tryAcquire());
+        limit.onOverload(second);
+        limit.release();
+        assertEquals(2, limit.getLimit());
+        assertTrue(limit.tryAcquire() >= 0);
+    }
+
+    @Test
+    public void growsWhileSucceedingAndHalvesOnOverload() {
+        DownloadLimit limit = new DownloadLimit(16, true);
+        assertEquals(4, limit.getLimit());
+        // a bit more than a limit's worth, as the limit grows meanwhile
+        for (int i = 0; i < 5; i++) {
+            limit.tryAcquire();
+            limit.onSuccess(1024, 1_000_000);
+            limit.release();
+        }
+        assertEquals(5, limit.getLimit());
+        for (int i = 0; i < 1000; i++) {
+            limit.onSuccess(1024, 1_000_000);
+        }
+        assertEquals(16, limit.getLimit());
+
+        // the downloads failing together only halve the limit once
+        long[] started = new long[16];
+        for (int i = 0; i < started.length; i++) {
+            started[i] = limit.tryAcquire();
+        }
+        for (long download : started) {
+            limit.onOverload(download);
+            limit.release();
+        }
+        assertEquals(8, limit.getLimit());
+        limit.onOverload(limit.tryAcquire());
+        assertEquals(4, limit.getLimit());
+    }
+
+    @Test
+    public void followsTheThroughputOfTheDownloads() {
+        DownloadLimit limit = new DownloadLimit(16, true);
+        long size = DownloadLimit.MIN_SAMPLE_SIZE;
+        // 1 MiB in 10 ms, then the same throughput with more downloads: the link has room for them
+        for (int i = 0; i < 10; i++) {
+            limit.onSuccess(size, 10_000_000);
+        }
+        assertEquals(6, limit.getLimit());
+
+        // the downloads share a saturated link, each of them gets less than half of the best throughput
+        for (int i = 0; i < 10; i++) {
+            limit.onSuccess(size * 2, 50_000_000);
+        }
+        assertEquals(4, limit.getLimit());
+
+        // still growing while the throughput is at least half of the best one
+        for (int i = 0; i < 5; i++) {
+            limit.onSuccess(size, 20_000_000);
+        }
+        assertEquals(5, limit.getLimit());
+
+        // the time of the small files is mostly latency
+        for (int i = 0; i < 6; i++) {
+            limit.onSuccess(size - 1, 1_000_000_000);
+        }
+        assertEquals(6, limit.getLimit());
+    }
+
+    @Test
+    public void fixedLimitIgnoresTheThroughput() {
+        DownloadLimit limit = new DownloadLimit(2, false);
+        limit.onSuccess(DownloadLimit.MIN_SAMPLE_SIZE, 10_000_000);
+        limit.onSuccess(DownloadLimit.MIN_SAMPLE_SIZE, 1_000_000_000);
+        assertEquals(2, limit.getLimit());
+    }
+}
@@ -0,0 +1,271 @@
+package org.jenkinsci.deprecatedusage;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DownloaderTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+    private HttpServer server;
+    private final Map<String, AtomicInteger> requestsByPath = new ConcurrentHashMap<>();
+
+    @After
+    public void shutdown() {
+        if (server != null) {
+            server.stop(0);
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Starts a local server returning the given content for each path, or 404 for the other paths
+     */
+    private String serve(Map<String, byte[]> contentByPath) throws IOException {
+        return serve(contentByPath, 0);
+    }
+
+    /**
+     * @param failuresPerPath number of requests answered with 502 for each path before serving it
+     */
+    private String serve(Map<String, byte[]> contentByPath, int failuresPerPath) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            int request = requestsByPath.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+            byte[] content = contentByPath.get(path);
+            if (request <= failuresPerPath) {
+                exchange.sendResponseHeaders(502, -1);
+            } else if (content == null) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                exchange.sendResponseHeaders(200, content.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(content);
+                }
+            }
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        return "http://" + server.getAddress().getHostString() + ':' + server.getAddress().getPort();
+    }
+
+    private JenkinsFile newFile(String name, String url, byte[] expectedContent) throws Exception {
+        JenkinsFile file = new JenkinsFile(name, "1.0", url, null, MessageDigest.getInstance("SHA-256"),
+                DigestUtils.sha256(expectedContent));
+        file.setFile(new File(tmp.getRoot(), "work/" + name + "/1.0/" + name + ".hpi"));
+        return file;
+    }
+
+    @Test
+    public void downloadsOverHttpWithOneRequestPerFile() throws Exception {
+        Map<String, byte[]> contentByPath = new ConcurrentHashMap<>();
+        for (int i = 0; i < 10; i++) {
+            byte[] content = new byte[100_000 + i];
+            for (int j = 0; j < content.length; j++) {
+                content[j] = (byte) (i + j);
+            }
+            contentByPath.put("/plugin" + i + ".hpi", content);
+        }
+        String baseUrl = serve(contentByPath);
+        List<JenkinsFile> files = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            files.add(newFile("plugin" + i, baseUrl + "/plugin" + i + ".hpi", contentByPath.get("/plugin" + i + ".hpi")));
+        }
+        // not found, and not retried
+        files.add(newFile("missing", baseUrl + "/missing.hpi", new byte[0]));
+        // served, but with another digest than the expected one
+        contentByPath.put("/corrupted.hpi", new byte[] {1, 2, 3});
+        files.add(newFile("corrupted", baseUrl + "/corrupted.hpi", new byte[] {4, 5, 6}));
+
+        Collection<JenkinsFile> synced = new Downloader(executor, 3).synchronize(files).get(1, TimeUnit.MINUTES);
+
+        assertEquals(10, synced.size());
+        for (int i = 0; i < 10; i++) {
+            JenkinsFile file = files.get(i);
+            assertTrue(synced.contains(file));
+            assertArrayEquals(contentByPath.get("/plugin" + i + ".hpi"), Files.readAllBytes(file.getFile().toPath()));
+            assertEquals(1, requestsByPath.get("/plugin" + i + ".hpi").get());
+        }
+        assertFalse(synced.contains(files.get(10)));
+        assertEquals(1, requestsByPath.get("/missing.hpi").get());
+        assertFalse(synced.contains(files.get(11)));
+    }
+
+    @Test
+    public void streamsFilesAsSoonAsDownloaded() throws IOException {
+        List<JenkinsFile> files = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            File source = tmp.newFile("plugin" + i + ".hpi");
+            Files.write(source.toPath(), ("content " + i).getBytes(StandardCharsets.UTF_8));
+            JenkinsFile file = new JenkinsFile("plugin" + i, "1.0", source.toURI().toString(), null, null, null);
+            file.setFile(new File(tmp.getRoot(), "work/plugin" + i + "/1.0/plugin" + i + ".hpi"));
+            files.add(file);
+        }
+        // a missing file is skipped
+        JenkinsFile missing = new JenkinsFile("missing", "1.0", new File(tmp.getRoot(), "missing.hpi").toURI().toString(), null, null, null);
+        missing.setFile(new File(tmp.getRoot(), "work/missing/1.0/missing.hpi"));
+        files.add(missing);
+
+        List<JenkinsFile> streamed = new ArrayList<>();
+        // smaller than the number of files, so that the downloads wait for them to be read
+        for (JenkinsFile file : new Downloader(executor, 2).stream(files, 1)) {
+            assertTrue(file.getFile().exists());
+            streamed.add(file);
+        }
+        assertEquals(5, streamed.size());
+    }
+
+    @Test
+    public void downloadsWhileStreamedFilesAreNotRead() throws Exception {
+        List<JenkinsFile> files = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            File source = tmp.newFile("plugin" + i + ".hpi");
+            Files.write(source.toPath(), ("content " + i).getBytes(StandardCharsets.UTF_8));
+            JenkinsFile file = new JenkinsFile("plugin" + i, "1.0", source.toURI().toString(), null, null, null);
+            file.setFile(new File(tmp.getRoot(), "work/plugin" + i + "/1.0/plugin" + i + ".hpi"));
+            files.add(file);
+        }
+        byte[] content = "core".getBytes(StandardCharsets.UTF_8);
+        String baseUrl = serve(Collections.singletonMap("/core.war", content));
+        JenkinsFile core = newFile("core", baseUrl + "/core.war", content);
+
+        Downloader downloader = new Downloader(executor, 2);
+        Iterable<JenkinsFile> streamed = downloader.stream(files, 1);
+        // many more files than the capacity and the threads of the executor are synchronized, and not read yet
+        Collection<JenkinsFile> synced = downloader.synchronize(Collections.singletonList(core)).get(1, TimeUnit.MINUTES);
+        assertEquals(Collections.singleton(core), synced);
+
+        int count = 0;
+        for (JenkinsFile file : streamed) {
+            count++;
+        }
+        assertEquals(20, count);
+    }
+
+    @Test
+    public void retriesFlakyDownloads() throws Exception {
+        Map<String, byte[]> contentByPath = new ConcurrentHashMap<>();
+        contentByPath.put("/flaky.hpi", "flaky".getBytes(StandardCharsets.UTF_8));
+        String baseUrl = serve(contentByPath, 2);
+        JenkinsFile flaky = newFile("flaky", baseUrl + "/flaky.hpi", contentByPath.get("/flaky.hpi"));
+        JenkinsFile other = newFile("other", baseUrl + "/other.hpi", new byte[0]);
+
+        // a single permit, which must be released while the flaky download waits for its retries
+        Downloader downloader = new Downloader(executor, 1, false, 2, 10);
+        Collection<JenkinsFile> synced = downloader.synchronize(Arrays.asList(flaky, other)).get(1, TimeUnit.MINUTES);
+
+        assertEquals(Collections.singleton(flaky), synced);
+        assertEquals(3, requestsByPath.get("/flaky.hpi").get());
+        // a 502 is retried, but not a 404
+        assertEquals(3, requestsByPath.get("/other.hpi").get());
+    }
+
+    @Test
+    public void failsAfterTheLastRetry() throws Exception {
+        Map<String, byte[]> contentByPath = new ConcurrentHashMap<>();
+        contentByPath.put("/flaky.hpi", "flaky".getBytes(StandardCharsets.UTF_8));
+        String baseUrl = serve(contentByPath, 3);
+        JenkinsFile flaky = newFile("flaky", baseUrl + "/flaky.hpi", contentByPath.get("/flaky.hpi"));
+
+        Collection<JenkinsFile> synced = new Downloader(executor, 1, false, 2, 10).synchronize(Collections.singletonList(flaky)).get(1, TimeUnit.MINUTES);
+
+        assertTrue(synced.isEmpty());
+        assertEquals(3, requestsByPath.get("/flaky.hpi").get());
+    }
+
+    @Test
+    public void failsTheRetriesAfterTheExecutorIsShutDown() throws Exception {
+        Map<String, byte[]> contentByPath = new ConcurrentHashMap<>();
+        contentByPath.put("/flaky.hpi", "flaky".getBytes(StandardCharsets.UTF_8));
+        String baseUrl = serve(contentByPath, 1);
+        JenkinsFile flaky = newFile("flaky", baseUrl + "/flaky.hpi", contentByPath.get("/flaky.hpi"));
+
+        // retried after 1 to 2 seconds
+        CompletableFuture<Collection<JenkinsFile>> synced = new Downloader(executor, 1, false, 1, 2000)
+                .synchronize(Collections.singletonList(flaky));
+        while (!requestsByPath.containsKey("/flaky.hpi")) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(200);
+        executor.shutdown();
+
+        assertTrue(synced.get(10, TimeUnit.SECONDS).isEmpty());
+        assertEquals(1, requestsByPath.get("/flaky.hpi").get());
+    }
+
+    @Test
+    public void resumesDownloadsCutShort() throws Exception {
+        byte[] content = new byte[1_000_000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        List<String> ranges = new ArrayList<>();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            ranges.add(String.valueOf(range));
+            if (range == null) {
+                // the connection drops in the middle of the body
+                exchange.sendResponseHeaders(200, content.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(content, 0, content.length / 2);
+                out.flush();
+                exchange.close();
+                return;
+            }
+            int from = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + (content.length - 1) + "/" + content.length);
+            exchange.sendResponseHeaders(206, content.length - from);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(content, from, content.length - from);
+            }
+            exchange.close();
+        });
+        server.start();
+        String url = "http://" + server.getAddress().getHostString() + ':' + server.getAddress().getPort() + "/core.war";
+        JenkinsFile core = newFile("core", url, content);
+
+        Collection<JenkinsFile> synced = new Downloader(executor, 1, false, 2, 10).synchronize(Collections.singletonList(core)).get(1, TimeUnit.MINUTES);
+
+        assertEquals(Collections.singleton(core), synced);
+        assertArrayEquals(content, Files.readAllBytes(core.getFile().toPath()));
+        assertFalse(Files.exists(core.getPartFile()));
+        assertEquals(2, ranges.size());
+        assertEquals("null", ranges.get(0));
+        int resumedFrom = Integer.parseInt(ranges.get(1).substring("bytes=".length(), ranges.get(1).length() - 1));
+        assertTrue(resumedFrom > 0 && resumedFrom <= content.length / 2);
+    }
+}
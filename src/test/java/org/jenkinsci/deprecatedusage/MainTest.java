@@ -0,0 +1,70 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MainTest {
+    private final Options options = Options.get();
+    private int ioThreads;
+    private boolean virtualThreads;
+
+    @Before
+    public void saveOptions() {
+        ioThreads = options.ioThreads;
+        virtualThreads = options.virtualThreads;
+    }
+
+    @After
+    public void restoreOptions() {
+        options.ioThreads = ioThreads;
+        options.virtualThreads = virtualThreads;
+    }
+
+    @Test
+    public void runsTheIoStagesOnTheGivenNumberOfThreads() throws Exception {
+        options.virtualThreads = false;
+        options.ioThreads = 3;
+        ExecutorService executor = Main.newIoExecutor(options);
+        try {
+            assertTrue(executor instanceof ThreadPoolExecutor);
+            assertEquals(3, ((ThreadPoolExecutor) executor).getMaximumPoolSize());
+            assertFalse(executor.submit(() -> isVirtual(Thread.currentThread())).get(1, TimeUnit.MINUTES));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void runsTheIoStagesOnVirtualThreadsWhenSupported() throws Exception {
+        options.virtualThreads = true;
+        options.ioThreads = 2;
+        ExecutorService executor = Main.newIoExecutor(options);
+        try {
+            boolean supported = Runtime.version().feature() >= 21;
+            assertEquals(supported, executor.submit(() -> isVirtual(Thread.currentThread())).get(1, TimeUnit.MINUTES));
+            if (!supported) {
+                // falls back to the threads given by --ioThreads
+                assertEquals(2, ((ThreadPoolExecutor) executor).getMaximumPoolSize());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static boolean isVirtual(Thread thread) throws ReflectiveOperationException {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class PluginVersionsTest {
+    @Test
+    public void ordersVersionsNumerically() {
+        List<String> versions = new ArrayList<>(Arrays.asList("1.10", "2.0", "1.9", "2.0.1", "2.0-beta-1", "1.10.1"));
+        versions.sort(PluginVersions.VERSION_ORDER);
+        assertEquals(Arrays.asList("1.9", "1.10", "1.10.1", "2.0-beta-1", "2.0", "2.0.1"), versions);
+    }
+
+    @Test
+    public void keepsTheLastVersionsOfEachPlugin() {
+        JSONObject acme = new JSONObject();
+        for (String version : Arrays.asList("1.9", "1.10", "1.2")) {
+            acme.put(version, new JSONObject().put("name", "acme").put("version", version)
+                    .put("url", "https://example.org/acme/" + version + "/acme.hpi"));
+        }
+        JSONObject metadata = new JSONObject().put("plugins", new JSONObject().put("acme", acme));
+
+        List<String> versions = new PluginVersions(metadata, 2).getPlugins().stream()
+                .map(JenkinsFile::getVersion).collect(Collectors.toList());
+        assertEquals(Arrays.asList("1.9", "1.10"), versions);
+    }
+}
@@ -0,0 +1,116 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.jenkinsci.deprecatedusage.search.OptionsBasedSearchCriteria;
+import org.jenkinsci.deprecatedusage.search.SearchCriteria;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ScanManifestTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final SearchCriteria criteria = new OptionsBasedSearchCriteria();
+
+    private DeprecatedUsage newUsage() {
+        Symbols symbols = Symbols.get();
+        DeprecatedUsage usage = new DeprecatedUsage("acme", "1.0", criteria, false);
+        Map<Integer, int[]> definedClasses = new HashMap<>();
+        definedClasses.put(symbols.intern("org/acme/Sub"), new int[] {symbols.intern("hudson/model/Api")});
+        Map<Integer, int[]> ancestorsOfUnknownClasses = new HashMap<>();
+        ancestorsOfUnknownClasses.put(symbols.intern("org/base/Mid"), new int[] {symbols.intern("org/base/Mid"), symbols.intern("hudson/model/Api")});
+        usage.restore(Collections.singleton("hudson/model/OldThing"), Collections.singleton("hudson/model/Api#old()V"),
+                Collections.singleton("hudson/model/Api#OLD"),
+                Collections.singletonMap("hudson/model/Api#old()V", Collections.singleton("org/acme/Caller#run()V")),
+                definedClasses, ancestorsOfUnknownClasses);
+        return usage;
+    }
+
+    @Test
+    public void restoresTheWrittenResults() throws Exception {
+        File file = new File(tmp.getRoot(), "output/scan-manifest.json");
+        DeprecatedUsage usage = newUsage();
+        DeprecatedUsage failed = new DeprecatedUsage("failed", "1.0", criteria, false);
+        failed.setAnalysisFailed();
+        new ScanManifest(file, "criteria").write(Arrays.asList(usage, failed));
+        // no temporary file left aside
+        assertEquals(Collections.singletonList("scan-manifest.json"), Arrays.asList(file.getParentFile().list()));
+
+        Map<String, DeprecatedUsage> usages = new ScanManifest(file, "criteria").load(criteria);
+        // the failed analyses are retried
+        assertEquals(Collections.singleton("acme:1.0"), usages.keySet());
+        DeprecatedUsage restored = usages.get("acme:1.0");
+        assertEquals(usage.getClasses(), restored.getClasses());
+        assertEquals(usage.getMethods(), restored.getMethods());
+        assertEquals(usage.getFields(), restored.getFields());
+        assertEquals(usage.getProviderToConsumers(), restored.getProviderToConsumers());
+        int sub = Symbols.get().intern("org/acme/Sub");
+        assertArrayEquals(usage.getDefinedClasses().get(sub), restored.getDefinedClasses().get(sub));
+        int mid = Symbols.get().intern("org/base/Mid");
+        assertArrayEquals(usage.getAncestorsOfUnknownClasses().get(mid), restored.getAncestorsOfUnknownClasses().get(mid));
+    }
+
+    @Test
+    public void ignoresTheResultsOfOtherCriteria() throws Exception {
+        File file = new File(tmp.getRoot(), "scan-manifest.json");
+        new ScanManifest(file, "criteria").write(Collections.singletonList(newUsage()));
+        assertTrue(new ScanManifest(file, "other criteria").load(criteria).isEmpty());
+    }
+
+    @Test
+    public void ignoresCorruptedResults() throws Exception {
+        File file = new File(tmp.getRoot(), "scan-manifest.json");
+        new ScanManifest(file, "criteria").write(Collections.singletonList(newUsage()));
+        byte[] content = Files.readAllBytes(file.toPath());
+        // as if the run was killed while writing it
+        Files.write(file.toPath(), Arrays.copyOf(content, content.length / 2));
+        assertTrue(new ScanManifest(file, "criteria").load(criteria).isEmpty());
+
+        Files.write(file.toPath(), "{\"criteria\":\"criteria\"}".getBytes(StandardCharsets.UTF_8));
+        assertTrue(new ScanManifest(file, "criteria").load(criteria).isEmpty());
+    }
+
+    @Test
+    public void fingerprintChangesWithTheDeprecatedApisAndTheOptions() {
+        Options options = Options.get();
+        DeprecatedApi deprecatedApi = new DeprecatedApi();
+        String fingerprint = ScanManifest.fingerprint(deprecatedApi, options);
+        assertEquals(fingerprint, ScanManifest.fingerprint(new DeprecatedApi(), options));
+
+        deprecatedApi.addClasses(Collections.singleton("hudson/model/OldThing"));
+        String withDeprecatedClass = ScanManifest.fingerprint(deprecatedApi, options);
+        assertNotEquals(fingerprint, withDeprecatedClass);
+
+        List<String> fingerprints = Arrays.asList(fingerprint, withDeprecatedClass);
+        Set<String> withOptions = new HashSet<>(fingerprints);
+        boolean recursive = options.recursive;
+        boolean includePluginLibraries = options.includePluginLibraries;
+        try {
+            options.recursive = !recursive;
+            withOptions.add(ScanManifest.fingerprint(deprecatedApi, options));
+            options.includePluginLibraries = !includePluginLibraries;
+            withOptions.add(ScanManifest.fingerprint(deprecatedApi, options));
+        } finally {
+            options.recursive = recursive;
+            options.includePluginLibraries = includePluginLibraries;
+        }
+        assertEquals(4, withOptions.size());
+        assertEquals(withDeprecatedClass, ScanManifest.fingerprint(deprecatedApi, options));
+    }
+}
@@ -0,0 +1,37 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SymbolsTest {
+    @Test
+    public void internsMembersOnce() {
+        Symbols symbols = Symbols.get();
+        int method = symbols.method("hudson/model/Api", "old", "()V");
+        assertEquals(method, symbols.method("hudson/model/Api", "old", "()V"));
+        assertEquals(method, symbols.parseKey("hudson/model/Api#old()V"));
+        assertEquals("hudson/model/Api#old()V", symbols.key(method));
+        assertFalse(symbols.isField(method));
+
+        int field = symbols.field("hudson/model/Api", "OLD");
+        assertEquals(field, symbols.parseKey("hudson/model/Api#OLD"));
+        assertEquals("hudson/model/Api#OLD", symbols.key(field));
+        assertTrue(symbols.isField(field));
+        assertEquals(symbols.owner(method), symbols.owner(field));
+    }
+
+    @Test
+    public void intSetGrows() {
+        IntSet set = new IntSet();
+        for (int i = 0; i < 1000; i += 3) {
+            assertTrue(set.add(i));
+        }
+        assertFalse(set.add(999));
+        assertEquals(334, set.size());
+        assertTrue(set.contains(300));
+        assertFalse(set.contains(301));
+    }
+}
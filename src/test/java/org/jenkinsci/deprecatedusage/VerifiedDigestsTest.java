@@ -0,0 +1,61 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VerifiedDigestsTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private JenkinsFile newFile(String content) throws Exception {
+        File file = tmp.newFile("plugin.hpi");
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        JenkinsFile jenkinsFile = new JenkinsFile("plugin", "1.0", "https://example.org/plugin.hpi", null,
+                DigestUtils.getSha256Digest(), DigestUtils.sha256(content));
+        jenkinsFile.setFile(file);
+        return jenkinsFile;
+    }
+
+    @Test
+    public void trustsUnchangedFilesAcrossRuns() throws Exception {
+        JenkinsFile plugin = newFile("content");
+        File index = new File(tmp.getRoot(), "verified-digests.json");
+        VerifiedDigests verifiedDigests = new VerifiedDigests(index);
+        assertTrue(verifiedDigests.isSynchronized(plugin));
+        assertEquals(0, verifiedDigests.getTrustedCount());
+        verifiedDigests.write();
+
+        // same size and modification time: trusted without reading it
+        FileTime lastModified = Files.getLastModifiedTime(plugin.getFile().toPath());
+        Files.write(plugin.getFile().toPath(), "CONTENT".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(plugin.getFile().toPath(), lastModified);
+        verifiedDigests = new VerifiedDigests(index);
+        assertTrue(verifiedDigests.isSynchronized(plugin));
+        assertEquals(1, verifiedDigests.getTrustedCount());
+
+        // modified: hashed again
+        Files.setLastModifiedTime(plugin.getFile().toPath(), FileTime.fromMillis(lastModified.toMillis() + 1000));
+        assertFalse(verifiedDigests.isSynchronized(plugin));
+    }
+
+    @Test
+    public void hashesFilesNotVerifiedYet() throws Exception {
+        JenkinsFile plugin = newFile("content");
+        Files.write(plugin.getFile().toPath(), "corrupted".getBytes(StandardCharsets.UTF_8));
+        VerifiedDigests verifiedDigests = new VerifiedDigests(new File(tmp.getRoot(), "verified-digests.json"));
+        assertFalse(verifiedDigests.isSynchronized(plugin));
+        plugin.deleteFile();
+        assertFalse(verifiedDigests.isSynchronized(plugin));
+    }
+}
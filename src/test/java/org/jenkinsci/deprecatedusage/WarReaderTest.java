@@ -0,0 +1,123 @@
+package org.jenkinsci.deprecatedusage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class WarReaderTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void readsClassesOfStoredAndCompressedJars() throws IOException {
+        File war = createWar();
+        Map<String, byte[]> classes = readClasses(war, false);
+
+        assertEquals("[WEB-INF/classes/org/acme/Legacy.class, org/acme/Plugin.class, org/acme/Util.class, com/lib/Lib.class]",
+                classes.keySet().toString());
+        assertArrayEquals(bytes("legacy"), classes.get("WEB-INF/classes/org/acme/Legacy.class"));
+        assertArrayEquals(bytes("plugin"), classes.get("org/acme/Plugin.class"));
+        assertArrayEquals(bytes("util"), classes.get("org/acme/Util.class"));
+        assertArrayEquals(bytes("lib"), classes.get("com/lib/Lib.class"));
+    }
+
+    @Test
+    public void readsOnlyTheJarOfThePlugin() throws IOException {
+        File war = createWar();
+        assertEquals("[WEB-INF/classes/org/acme/Legacy.class, org/acme/Plugin.class, org/acme/Util.class]",
+                readClasses(war, true).keySet().toString());
+    }
+
+    @Test(expected = ZipException.class)
+    public void rejectsCorruptedEntries() throws IOException {
+        File war = tmp.newFile("corrupted.hpi");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(war))) {
+            putEntry(out, "WEB-INF/classes/org/acme/Legacy.class", bytes("legacy"), true);
+        }
+        // a flipped bit in the stored class file, as in a corrupted download
+        byte[] content = Files.readAllBytes(war.toPath());
+        content[new String(content, StandardCharsets.ISO_8859_1).indexOf("legacy42")] ^= 1;
+        Files.write(war.toPath(), content);
+        readClasses(war, false);
+    }
+
+    private static Map<String, byte[]> readClasses(File war, boolean scanOnlyJarOfPlugin) throws IOException {
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        try (WarReader warReader = new WarReader(war, scanOnlyJarOfPlugin)) {
+            String fileName = warReader.nextClass();
+            while (fileName != null) {
+                classes.put(fileName, warReader.readClass());
+                fileName = warReader.nextClass();
+            }
+        }
+        return classes;
+    }
+
+    private File createWar() throws IOException {
+        Map<String, byte[]> pluginJar = new LinkedHashMap<>();
+        pluginJar.put("org/acme/Plugin.class", bytes("plugin"));
+        pluginJar.put("org/acme/messages.properties", bytes("resource"));
+        pluginJar.put("org/acme/Util.class", bytes("util"));
+        Map<String, byte[]> libJar = new LinkedHashMap<>();
+        libJar.put("com/lib/Lib.class", bytes("lib"));
+
+        File war = tmp.newFile("acme.hpi");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(war))) {
+            putEntry(out, "index.jelly", bytes("<div/>"), false);
+            putEntry(out, "WEB-INF/classes/org/acme/Legacy.class", bytes("legacy"), false);
+            putEntry(out, "WEB-INF/lib/acme.jar", jar(pluginJar), true);
+            putEntry(out, "WEB-INF/lib/lib.jar", jar(libJar), false);
+        }
+        return war;
+    }
+
+    private static byte[] jar(Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(jar)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                putEntry(out, entry.getKey(), entry.getValue(), false);
+            }
+        }
+        return jar.toByteArray();
+    }
+
+    private static void putEntry(ZipOutputStream out, String name, byte[] content, boolean stored) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        if (stored) {
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(content.length);
+            entry.setCompressedSize(content.length);
+            entry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(entry);
+        out.write(content);
+        out.closeEntry();
+    }
+
+    private static byte[] bytes(String content) {
+        StringBuilder sb = new StringBuilder();
+        // long enough to be really compressed
+        for (int i = 0; i < 100; i++) {
+            sb.append(content).append(i);
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,70 @@
+package org.jenkinsci.deprecatedusage.search;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClassNameMatcherTest {
+    @Test
+    public void combinesAllKindsOfPatterns() {
+        ClassNameMatcher matcher = ClassNameMatcher.compile(Arrays.asList(
+                "hudson/model/Hudson", "jenkins/security/*", "*Descriptor", "*/Util*"));
+
+        assertTrue(matcher.test("hudson/model/Hudson"));
+        assertFalse(matcher.test("hudson/model/Hudson$CloudList"));
+        assertTrue(matcher.test("jenkins/security/ApiTokenProperty"));
+        assertFalse(matcher.test("jenkins/securityx/Other"));
+        assertTrue(matcher.test("hudson/model/Descriptor"));
+        assertFalse(matcher.test("hudson/model/DescriptorVisibilityFilter"));
+        assertTrue(matcher.test("hudson/Util"));
+        assertTrue(matcher.test("hudson/util/xstream/UtilFoo"));
+        assertFalse(matcher.test("hudson/Uti"));
+    }
+
+    @Test
+    public void containsTheWholeTextBetweenTheStars() {
+        // the previous checker dropped the last character of the text and matched hudson/Job as well
+        ClassNameMatcher matcher = ClassNameMatcher.compile(Collections.singleton("*Jobs*"));
+        assertTrue(matcher.test("hudson/model/Jobs"));
+        assertTrue(matcher.test("org/acme/JobsList"));
+        assertFalse(matcher.test("hudson/model/Job"));
+        assertFalse(matcher.test("hudson/model/JobProperty"));
+    }
+
+    @Test
+    public void matchesSubstringsSharingPrefixes() {
+        // needs the failure links: "abd" is found after a partial match of "abc"
+        ClassNameMatcher matcher = ClassNameMatcher.compile(Arrays.asList("*abc*", "*bd*"));
+        assertTrue(matcher.test("xxabdxx"));
+        assertTrue(matcher.test("ababc"));
+        assertFalse(matcher.test("abxbc"));
+    }
+
+    @Test
+    public void starAloneMatchesEverything() {
+        assertTrue(ClassNameMatcher.compile(Collections.singleton("*")).test("org/acme/Foo"));
+        assertFalse(ClassNameMatcher.compile(Collections.emptySet()).test("org/acme/Foo"));
+    }
+
+    @Test
+    public void manyPatterns() {
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            patterns.add("org/acme" + i + "/*");
+            patterns.add("*Suffix" + i);
+            patterns.add("*Part" + i + "/*");
+        }
+        ClassNameMatcher matcher = ClassNameMatcher.compile(patterns);
+        assertTrue(matcher.test("org/acme4321/Foo"));
+        assertTrue(matcher.test("com/FooSuffix4999"));
+        assertTrue(matcher.test("com/Part123/Foo"));
+        assertFalse(matcher.test("com/Part5000/Foo"));
+        assertFalse(matcher.test("org/acme/Foo"));
+    }
+}
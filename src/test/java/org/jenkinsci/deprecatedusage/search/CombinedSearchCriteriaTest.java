@@ -0,0 +1,88 @@
+package org.jenkinsci.deprecatedusage.search;
+
+import org.jenkinsci.deprecatedusage.DeprecatedApi;
+import org.jenkinsci.deprecatedusage.Symbols;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CombinedSearchCriteriaTest {
+    /**
+     * Not one of the kinds merged by {@link CombinedSearchCriteria}, so asked one by one
+     */
+    private static final SearchCriteria CUSTOM = new SearchCriteria() {
+        @Override
+        public boolean isLookingForClass(String className) {
+            return className.equals("org/acme/Custom");
+        }
+
+        @Override
+        public boolean isLookingForMethod(String methodKey, String className, String methodName) {
+            return methodKey.equals("org/acme/Custom#run()V");
+        }
+
+        @Override
+        public boolean isLookingForField(String fieldKey, String className, String fieldName) {
+            return fieldKey.equals("org/acme/Custom#FIELD");
+        }
+
+        @Override
+        public boolean shouldAnalyzeClass(String className) {
+            return className.startsWith("org/acme/");
+        }
+    };
+
+    @Test
+    public void answersWithIdsAsWithNames() {
+        DeprecatedApi api = new DeprecatedApi();
+        api.addClasses(Collections.singleton("hudson/model/OldThing"));
+        api.getMethods().add("hudson/model/Api#old()V");
+        api.getFields().add("hudson/model/Api#OLD");
+        SearchCriteria criteria = new DeprecatedApiSearchCriteria(api)
+                .combineWith(new RecursiveSearchCriteria(Collections.singleton("org/acme/Caller#run()V")))
+                .combineWith(CUSTOM);
+        Symbols symbols = Symbols.get();
+
+        for (String className : Arrays.asList("hudson/model/OldThing", "org/acme/Custom", "hudson/model/Api")) {
+            assertEquals(className, criteria.isLookingForClass(className), criteria.isLookingForClass(symbols.intern(className)));
+        }
+        assertFalse(criteria.isLookingForClass(symbols.intern("hudson/model/Api")));
+
+        for (String methodKey : Arrays.asList("hudson/model/Api#old()V", "org/acme/Caller#run()V", "org/acme/Custom#run()V")) {
+            String className = DeprecatedApi.extractClassNameFromKey(methodKey);
+            String methodName = methodKey.substring(className.length() + 1, methodKey.indexOf('('));
+            assertTrue(methodKey, criteria.isLookingForMethod(methodKey, className, methodName));
+            assertTrue(methodKey, criteria.isLookingForMethod(symbols.parseKey(methodKey)));
+        }
+        assertFalse(criteria.isLookingForMethod(symbols.method("hudson/model/Api", "old", "(I)V")));
+        assertFalse(criteria.isLookingForMethod(symbols.method("hudson/model/Api", "current", "()V")));
+
+        for (String fieldKey : Arrays.asList("hudson/model/Api#OLD", "org/acme/Custom#FIELD")) {
+            assertTrue(fieldKey, criteria.isLookingForField(symbols.parseKey(fieldKey)));
+        }
+        assertFalse(criteria.isLookingForField(symbols.field("hudson/model/Api", "CURRENT")));
+    }
+
+    @Test
+    public void analyzesTheClassesOfAnyMember() {
+        Symbols symbols = Symbols.get();
+        SearchCriteria criteria = new RecursiveSearchCriteria(Collections.singleton("hudson/model/Api#old()V"))
+                .combineWith(CUSTOM);
+        assertTrue(criteria.shouldAnalyzeClass(symbols.intern("hudson/model/Api")));
+        assertTrue(criteria.shouldAnalyzeClass(symbols.intern("org/acme/Caller")));
+        assertFalse(criteria.shouldAnalyzeClass(symbols.intern("hudson/model/Other")));
+        // asked again, from the memoized flags
+        assertFalse(criteria.shouldAnalyzeClass(symbols.intern("hudson/model/Other")));
+        assertFalse(criteria.shouldAnalyzeClass("hudson/model/Other"));
+
+        // all the classes are analyzed when looking for deprecated APIs
+        SearchCriteria withDeprecatedApi = criteria.combineWith(new DeprecatedApiSearchCriteria(new DeprecatedApi()));
+        assertTrue(withDeprecatedApi.shouldAnalyzeClass(symbols.intern("hudson/model/Other")));
+        assertTrue(withDeprecatedApi.shouldAnalyzeClass("hudson/model/Other"));
+    }
+}